@@ -0,0 +1,49 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.benchmarks.model.Person;
+import com.ahimsasystems.chenup.postgresdb.PostgresSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// The generated getters and setters are on every path through business code. The setter also marks the object dirty in its session.
+// Each thread has its own object, so this is the cost of the accessors without contention; see SharedEntityBenchmark for the contended case.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImplAccessorBenchmark {
+
+    @Param({"SYNCHRONIZED", "VOLATILE", "SNAPSHOT"})
+    public String accessors;
+
+    private Person person;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void setUp(PersistenceBenchmarkState state) {
+        PostgresSession session = state.persistenceManager.openSession();
+        person = (Person) session.create(PersistenceBenchmarkState.personType(accessors));
+        person.setName("Ada Lovelace");
+    }
+
+    @Benchmark
+    public String get() {
+        return person.getName();
+    }
+
+    @Benchmark
+    public void set() {
+        person.setName((counter++ & 1) == 0 ? "Ada Lovelace" : "Ada King");
+    }
+}
@@ -0,0 +1,68 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.benchmarks.model.Person;
+import com.ahimsasystems.chenup.benchmarks.model.PersonImpl;
+import com.ahimsasystems.chenup.benchmarks.model.PersonMapper;
+import com.ahimsasystems.chenup.benchmarks.model.SnapshotPerson;
+import com.ahimsasystems.chenup.benchmarks.model.SnapshotPersonImpl;
+import com.ahimsasystems.chenup.benchmarks.model.SnapshotPersonMapper;
+import com.ahimsasystems.chenup.benchmarks.model.VolatilePerson;
+import com.ahimsasystems.chenup.benchmarks.model.VolatilePersonImpl;
+import com.ahimsasystems.chenup.benchmarks.model.VolatilePersonMapper;
+import com.ahimsasystems.chenup.postgresdb.PostgresPersistenceManager;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A persistence manager with the sample entities registered, over a stub connection that returns one canned person row.
+ * Each benchmark thread gets its own connection, since a connection and its sessions are used by one thread at a time.
+ */
+@State(Scope.Thread)
+public class PersistenceBenchmarkState {
+
+    public PostgresPersistenceManager persistenceManager;
+    public Connection connection;
+    public UUID personId;
+
+    @Setup
+    public void setUp() {
+        persistenceManager = newPersistenceManager();
+
+        connection = StubJdbc.connection(Map.of(
+                "name", "Ada Lovelace",
+                "birth_date", LocalDate.of(1815, 12, 10),
+                "thing_deleted", false,
+                "thing_version", 1));
+        personId = UUID.randomUUID();
+    }
+
+    // The same registrations the generated PersistenceInitializer makes.
+    static PostgresPersistenceManager newPersistenceManager() {
+        PostgresPersistenceManager persistenceManager = new PostgresPersistenceManager();
+        persistenceManager.registerType(Person.class, PersonImpl::new);
+        persistenceManager.registerMapper(Person.class, PersonMapper::new);
+        persistenceManager.registerType(VolatilePerson.class, VolatilePersonImpl::new);
+        persistenceManager.registerMapper(VolatilePerson.class, VolatilePersonMapper::new);
+        persistenceManager.registerType(SnapshotPerson.class, SnapshotPersonImpl::new);
+        persistenceManager.registerMapper(SnapshotPerson.class, SnapshotPersonMapper::new);
+        return persistenceManager;
+    }
+
+    // The sample entity with the given accessor strategy, for the benchmarks that compare them.
+    static Class<? extends Person> personType(String accessors) {
+        return switch (accessors) {
+            case "VOLATILE" -> VolatilePerson.class;
+            case "SNAPSHOT" -> SnapshotPerson.class;
+            default -> Person.class;
+        };
+    }
+}
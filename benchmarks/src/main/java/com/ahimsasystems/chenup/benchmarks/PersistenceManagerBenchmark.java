@@ -0,0 +1,73 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.benchmarks.model.Person;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.postgresdb.PostgresContext;
+import com.ahimsasystems.chenup.postgresdb.PostgresSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * create, read and flush through a session, against the stub connection. The JDBC calls cost next to nothing,
+ * so the numbers are the framework's own overhead per object: identity map, statement cache, hydration and batching.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PersistenceManagerBenchmark {
+
+    private static final int FLUSH_SIZE = 100;
+
+    @Benchmark
+    public Object create(PersistenceBenchmarkState state) {
+        PostgresSession session = state.persistenceManager.openSession();
+        return session.create(Person.class);
+    }
+
+    // A fresh session each time, so the read always misses the identity map and goes through the mapper.
+    @Benchmark
+    public Person readMiss(PersistenceBenchmarkState state) {
+        PostgresSession session = state.persistenceManager.openSession();
+        try (PostgresContext context = new PostgresContext(state.connection, session)) {
+            return session.read(state.personId, Person.class, context);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLUSH_SIZE)
+    public FlushResult flushBatched(PersistenceBenchmarkState state) {
+        PostgresSession session = state.persistenceManager.openSession();
+        for (int i = 0; i < FLUSH_SIZE; i++) {
+            Person person = (Person) session.create(Person.class);
+            person.setName("Person " + i);
+            person.setBirthDate(LocalDate.of(1990, 1, 1));
+        }
+        try (PostgresContext context = new PostgresContext(state.connection, session)) {
+            return session.flushBatched(context);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLUSH_SIZE)
+    public void flush(PersistenceBenchmarkState state, Blackhole blackhole) throws SQLException {
+        PostgresSession session = state.persistenceManager.openSession();
+        for (int i = 0; i < FLUSH_SIZE; i++) {
+            Person person = (Person) session.create(Person.class);
+            person.setName("Person " + i);
+            blackhole.consume(person);
+        }
+        try (PostgresContext context = new PostgresContext(state.connection, session)) {
+            session.flush(context);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.benchmarks.model.PersonName;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeReader;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeWriter;
+import com.ahimsasystems.chenup.postgresdb.PostgresAbstractMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// Composite (UDT) values are parsed on every read and formatted on every write of a record-typed field.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PgRecordBenchmark {
+
+    // Includes a quoted field, so the quoting and escaping paths are exercised too.
+    private final String composite = "(Ada,\"King, Countess of Lovelace\")";
+    private final List<String> fields = List.of("Ada", "King, Countess of Lovelace");
+    private final PersonName record = new PersonName("Ada", "King, Countess of Lovelace");
+    private final PgCompositeWriter writer = new PgCompositeWriter();
+
+    @Benchmark
+    public List<String> parsePgRecord() {
+        return PostgresAbstractMapper.parsePgRecord(composite);
+    }
+
+    @Benchmark
+    public String unparsePgRecord() {
+        return PostgresAbstractMapper.unparsePgRecord(fields);
+    }
+
+    @Benchmark
+    public PersonName toRecord() {
+        return PostgresAbstractMapper.toRecord(composite, PersonName.class);
+    }
+
+    @Benchmark
+    public String serializeToPostgresComposite() {
+        return PostgresAbstractMapper.serializeToPostgresComposite(record);
+    }
+
+    // The reader and writer the generated codecs use, decoding and encoding the record the way its codec would.
+    @Benchmark
+    public PersonName readComposite() {
+        PgCompositeReader in = new PgCompositeReader(composite);
+        String givenName = in.next().isNull() ? null : in.readString();
+        String surName = in.next().isNull() ? null : in.readString();
+        in.end();
+        return new PersonName(givenName, surName);
+    }
+
+    @Benchmark
+    public String writeComposite() {
+        return writer.begin().writeString(record.givenName()).writeString(record.surName()).finish();
+    }
+}
@@ -0,0 +1,95 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.benchmarks.model.Person;
+import com.ahimsasystems.chenup.benchmarks.model.SnapshotPersonImpl;
+import com.ahimsasystems.chenup.postgresdb.PostgresSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * One object read by several threads while another thread keeps changing it, the pattern of a shared, read-mostly entity.
+ * With SYNCHRONIZED accessors the readers take turns on the object's monitor; with VOLATILE and SNAPSHOT they do not lock at all.
+ * readBoth reads two fields that the writer changes together: only SNAPSHOT guarantees they come from the same update.
+ * <p>
+ * Only the writer touches the session, through the setters, since a session is used by one thread at a time.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharedEntityBenchmark {
+
+    private static final LocalDate ADA_BORN = LocalDate.of(1815, 12, 10);
+    private static final LocalDate CHARLES_BORN = LocalDate.of(1791, 12, 26);
+
+    @Param({"SYNCHRONIZED", "VOLATILE", "SNAPSHOT"})
+    public String accessors;
+
+    private Person person;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        PostgresSession session = PersistenceBenchmarkState.newPersistenceManager().openSession();
+        person = (Person) session.create(PersistenceBenchmarkState.personType(accessors));
+        person.setName("Ada Lovelace");
+        person.setBirthDate(ADA_BORN);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public String get() {
+        return person.getName();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void set() {
+        person.setName((counter++ & 1) == 0 ? "Ada Lovelace" : "Ada King");
+    }
+
+    @Benchmark
+    @Group("consistentRead")
+    @GroupThreads(3)
+    public void readBoth(Blackhole blackhole) {
+        if (person instanceof SnapshotPersonImpl snapshotPerson) {
+            SnapshotPersonImpl.State state = snapshotPerson.snapshot();
+            blackhole.consume(state.name());
+            blackhole.consume(state.birthDate());
+        } else {
+            blackhole.consume(person.getName());
+            blackhole.consume(person.getBirthDate());
+        }
+    }
+
+    @Benchmark
+    @Group("consistentRead")
+    @GroupThreads(1)
+    public void writeBoth() {
+        boolean charles = (counter++ & 1) == 0;
+        String name = charles ? "Charles Babbage" : "Ada Lovelace";
+        LocalDate birthDate = charles ? CHARLES_BORN : ADA_BORN;
+        if (person instanceof SnapshotPersonImpl snapshotPerson) {
+            snapshotPerson.update(state -> new SnapshotPersonImpl.State(name, birthDate));
+        } else {
+            person.setName(name);
+            person.setBirthDate(birthDate);
+        }
+    }
+}
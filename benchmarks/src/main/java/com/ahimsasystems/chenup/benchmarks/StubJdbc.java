@@ -0,0 +1,109 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A JDBC Connection that does no I/O, so the benchmarks measure chenup's own overhead rather than the database.
+ * <p>
+ * Every query returns a single row built from the given column values, with the id column set to the first parameter.
+ * Updates report one row changed, and batches report one row per addBatch(). Anything else returns null, zero or false.
+ */
+public final class StubJdbc {
+
+    private StubJdbc() {
+    }
+
+    public static Connection connection(Map<String, Object> row) {
+        return proxy(Connection.class, (method, args) -> switch (method) {
+            case "prepareStatement" -> statement(row);
+            case "createArrayOf" -> proxy(Array.class, (m, a) -> null);
+            case "isClosed" -> false;
+            default -> null;
+        });
+    }
+
+    private static PreparedStatement statement(Map<String, Object> row) {
+        Map<Integer, Object> parameters = new HashMap<>();
+        int[] batchSize = {0};
+        return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+            case "setObject", "setInt", "setString", "setArray" -> {
+                parameters.put((Integer) args[0], args[1]);
+                yield null;
+            }
+            case "clearParameters" -> {
+                parameters.clear();
+                yield null;
+            }
+            case "addBatch" -> {
+                batchSize[0]++;
+                yield null;
+            }
+            case "clearBatch" -> {
+                batchSize[0] = 0;
+                yield null;
+            }
+            case "executeBatch" -> {
+                int[] counts = new int[batchSize[0]];
+                Arrays.fill(counts, 1);
+                batchSize[0] = 0;
+                yield counts;
+            }
+            case "executeUpdate" -> 1;
+            case "executeQuery" -> resultSet(row, parameters.get(1) instanceof UUID id ? id : UUID.randomUUID());
+            case "isClosed" -> false;
+            default -> null;
+        });
+    }
+
+    private static ResultSet resultSet(Map<String, Object> row, UUID id) {
+        boolean[] consumed = {false};
+        return proxy(ResultSet.class, (method, args) -> switch (method) {
+            case "next" -> {
+                boolean hasRow = !consumed[0];
+                consumed[0] = true;
+                yield hasRow;
+            }
+            case "getObject" -> "id".equals(args[0]) ? id : row.get((String) args[0]);
+            case "getBoolean" -> Boolean.TRUE.equals(row.get((String) args[0]));
+            case "getInt" -> row.get((String) args[0]) instanceof Integer i ? i : 0;
+            default -> null;
+        });
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : defaultNumber(method.getReturnType());
+            }
+            return result;
+        });
+    }
+
+    private static Object defaultNumber(Class<?> type) {
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0.0f;
+        if (type == char.class) return (char) 0;
+        return null; // void
+    }
+}
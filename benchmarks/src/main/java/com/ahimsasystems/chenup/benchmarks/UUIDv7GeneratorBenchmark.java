@@ -0,0 +1,32 @@
+package com.ahimsasystems.chenup.benchmarks;
+
+import com.ahimsasystems.chenup.core.UUIDv7Generator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// Every new object gets an id from here, so both the uncontended cost and the cost under many request threads matter.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UUIDv7GeneratorBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public UUID generateSingleThreaded() {
+        return UUIDv7Generator.generateUUIDv7();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public UUID generateContended() {
+        return UUIDv7Generator.generateUUIDv7();
+    }
+}
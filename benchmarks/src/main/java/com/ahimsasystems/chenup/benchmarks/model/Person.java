@@ -0,0 +1,21 @@
+package com.ahimsasystems.chenup.benchmarks.model;
+
+import com.ahimsasystems.chenup.annotations.Entity;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+
+import java.time.LocalDate;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// A sample entity for the benchmarks. PersonImpl and PersonMapper are generated by the chenup annotation processor.
+@Entity
+public interface Person extends PersistenceCapable {
+    String getName();
+
+    void setName(String name);
+
+    LocalDate getBirthDate();
+
+    void setBirthDate(LocalDate birthDate);
+}
@@ -0,0 +1,8 @@
+package com.ahimsasystems.chenup.benchmarks.model;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// A sample value type for the composite (UDT) parsing and formatting benchmarks.
+public record PersonName(String givenName, String surName) {
+}
@@ -0,0 +1,12 @@
+package com.ahimsasystems.chenup.benchmarks.model;
+
+import com.ahimsasystems.chenup.annotations.AccessorStrategy;
+import com.ahimsasystems.chenup.annotations.Entity;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// Person with SNAPSHOT accessors, for comparing the accessor strategies.
+@Entity(accessors = AccessorStrategy.SNAPSHOT)
+public interface SnapshotPerson extends Person {
+}
@@ -0,0 +1,22 @@
+package com.ahimsasystems.chenup.annotations;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * How the generated Impl guards its fields, chosen per entity or relationship with the accessors attribute.
+ * <p>
+ * SYNCHRONIZED is the original: every getter and setter locks the object. Simple, but concurrent readers of a shared
+ * object queue up on its monitor, and a virtual thread holding it may pin its carrier.
+ * <p>
+ * VOLATILE makes each field volatile and drops the lock. Each read sees the latest write of that field, which is all
+ * most objects need, but two fields read one after the other may come from different updates.
+ * <p>
+ * SNAPSHOT keeps all the fields in one immutable State record that setters replace with a compare-and-set. Getters are a
+ * single volatile read, snapshot() returns all the fields as of one moment, and update() changes several fields at once.
+ */
+public enum AccessorStrategy {
+    SYNCHRONIZED,
+    VOLATILE,
+    SNAPSHOT
+}
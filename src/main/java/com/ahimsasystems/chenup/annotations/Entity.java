@@ -8,4 +8,6 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.SOURCE)
 public @interface Entity {
+    /** How the generated Impl guards its fields. See AccessorStrategy. */
+    AccessorStrategy accessors() default AccessorStrategy.SYNCHRONIZED;
 }
@@ -0,0 +1,19 @@
+package com.ahimsasystems.chenup.annotations;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides the fetch type of one entity reference. Put it on the getter or the setter of the reference;
+ * the others keep the fetch type of their @Relationship, or LAZY in an @Entity.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Fetch {
+    FetchType value();
+}
@@ -0,0 +1,15 @@
+package com.ahimsasystems.chenup.annotations;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * When a reference to another entity, such as a relationship endpoint, is loaded.
+ * <p>
+ * EAGER reads the referenced entity together with the object that refers to it, and so on for whatever that entity refers to.
+ * LAZY only keeps its id, and reads the entity through the session's identity map the first time the getter is called.
+ */
+public enum FetchType {
+    EAGER,
+    LAZY
+}
@@ -11,4 +11,9 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.SOURCE)
 public @interface Relationship {
+    /** How the generated Impl guards its fields. See AccessorStrategy. */
+    AccessorStrategy accessors() default AccessorStrategy.SYNCHRONIZED;
+
+    /** When the endpoints are loaded, unless overridden with @Fetch. LAZY keeps listing relationships from loading every entity they connect. */
+    FetchType fetch() default FetchType.LAZY;
 }
@@ -0,0 +1,120 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Handles pinning and statistics for the identity maps. Pinned objects live in a plain map of their own and do not count
+ * against any bound; subclasses only decide how the unpinned, clean objects are held.
+ */
+public abstract class AbstractIdentityMap implements IdentityMap {
+
+    private record Entry(PersistenceCapable object, Class interfaceType) {
+    }
+
+    private final Map<UUID, Entry> pinned = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    protected abstract PersistenceCapable getUnpinned(UUID id);
+
+    protected abstract Class getUnpinnedInterfaceType(UUID id);
+
+    protected abstract void putUnpinned(UUID id, PersistenceCapable object, Class interfaceType);
+
+    protected abstract void removeUnpinned(UUID id);
+
+    protected abstract int unpinnedSize();
+
+    protected void recordEviction() {
+        evictions++;
+    }
+
+    @Override
+    public PersistenceCapable get(UUID id) {
+        PersistenceCapable object = lookup(id);
+        if (object != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return object;
+    }
+
+    @Override
+    public Class getInterfaceType(UUID id) {
+        Entry entry = pinned.get(id);
+        return entry != null ? entry.interfaceType() : getUnpinnedInterfaceType(id);
+    }
+
+    @Override
+    public boolean containsKey(UUID id) {
+        return lookup(id) != null;
+    }
+
+    @Override
+    public void put(PersistenceCapable object, Class interfaceType) {
+        UUID id = object.getId();
+        if (pinned.containsKey(id)) {
+            pinned.put(id, new Entry(object, interfaceType));
+        } else {
+            putUnpinned(id, object, interfaceType);
+        }
+    }
+
+    @Override
+    public void remove(UUID id) {
+        pinned.remove(id);
+        removeUnpinned(id);
+    }
+
+    @Override
+    public void pin(UUID id) {
+        if (pinned.containsKey(id)) {
+            return;
+        }
+        PersistenceCapable object = getUnpinned(id);
+        if (object != null) {
+            pinned.put(id, new Entry(object, getUnpinnedInterfaceType(id)));
+            removeUnpinned(id);
+        }
+    }
+
+    @Override
+    public void unpin(UUID id) {
+        Entry entry = pinned.remove(id);
+        if (entry != null) {
+            putUnpinned(id, entry.object(), entry.interfaceType());
+        }
+    }
+
+    @Override
+    public int size() {
+        return pinned.size() + unpinnedSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits;
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    private PersistenceCapable lookup(UUID id) {
+        Entry entry = pinned.get(id);
+        return entry != null ? entry.object() : getUnpinned(id);
+    }
+}
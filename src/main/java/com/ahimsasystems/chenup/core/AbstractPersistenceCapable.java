@@ -3,6 +3,8 @@ package com.ahimsasystems.chenup.core;
 import jakarta.json.bind.annotation.JsonbTransient;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.Clock;
 import java.time.Instant;
 import java.util.UUID;
@@ -47,24 +49,83 @@ public abstract class AbstractPersistenceCapable implements PersistenceCapable {
         }
         return metaData;
     }
-// This is now all in the persistence manager.
-//    public void dirty() {
-//
-//        if (persistenceManager != null) {
-//            persistenceManager.dirty(this);
-//            metaData.incrementVersion();
-//        }
-//    }
-
-    // Persistence manager knows about the persistence capable objects, not vice versa.
-    // This keeps the persistence capable objects very simple and focused on their own data and behavior, without needing to know about the persistence layer.
-//        PersistenceManager persistenceManager;
-//        public void setPersistenceManager(PersistenceManager persistenceManager) {
-//            this.persistenceManager = persistenceManager;
-//        }
-//    public PersistenceManager getPersistenceManager() {
-//        return persistenceManager;
-//    }
+
+    // The session the object was created or read in. Both backends set it, so the setters can tell the session the object is dirty.
+    @JsonbTransient
+    private PersistenceManager<?> persistenceManager;
+
+    public PersistenceManager<?> getPersistenceManager() {
+        return persistenceManager;
+    }
+
+    public void setPersistenceManager(PersistenceManager<?> persistenceManager) {
+        this.persistenceManager = persistenceManager;
+    }
+
+    // One bit per generated field, in field order, set by the field's setter and taken when the object is written.
+    // The mapper uses it to update only the changed columns. Fields past the 63rd share the last bit.
+    // Setters of VOLATILE and SNAPSHOT Impls run without a lock, so bits are set with an atomic or.
+    @JsonbTransient
+    private volatile long dirtyFields;
+
+    // The fields taken by a write that has not yet committed. Only the flushing thread uses it.
+    @JsonbTransient
+    private long writingFields;
+
+    private static final VarHandle DIRTY_FIELDS;
+
+    static {
+        try {
+            DIRTY_FIELDS = MethodHandles.lookup().findVarHandle(AbstractPersistenceCapable.class, "dirtyFields", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Called by the generated setters with the index of their field.
+     * Only the setter that sets the bit tells the session, which takes the session's lock. A field set again before the flush is the
+     * usual case, and then the object is already pending, so setters on a shared object contend on the session only once per field and flush.
+     */
+    protected void markDirty(int field) {
+        long bit = dirtyBit(field);
+        if ((dirtyFields & bit) == 0 && ((long) DIRTY_FIELDS.getAndBitwiseOr(this, bit) & bit) == 0) {
+            getPersistenceManager().dirty(this);
+        }
+    }
+
+    public long getDirtyFields() {
+        return dirtyFields;
+    }
+
+    /**
+     * Takes the dirty fields for a write and returns every field taken and not yet committed.
+     * The bits are moved out of the dirty fields in one atomic step before the mapper reads any value, so a setter that runs
+     * while the object is being written sets its bit again, and its change is written by the next flush instead of being cleared
+     * with the fields that were written.
+     */
+    public long takeDirtyFields() {
+        writingFields |= (long) DIRTY_FIELDS.getAndSet(this, 0L);
+        return writingFields;
+    }
+
+    /** The write of the taken fields has committed. Returns true if the object has been changed again since they were taken. */
+    public boolean writeCommitted() {
+        writingFields = 0;
+        return dirtyFields != 0;
+    }
+
+    /** The write of the taken fields did not happen, or was rolled back, so they are dirty again. */
+    public void writeFailed() {
+        if (writingFields != 0) {
+            DIRTY_FIELDS.getAndBitwiseOr(this, writingFields);
+            writingFields = 0;
+        }
+    }
+
+    public static long dirtyBit(int field) {
+        return 1L << Math.min(field, 63);
+    }
 
     // Additional common methods can be added here if needed.
 }
@@ -2,5 +2,5 @@ package com.ahimsasystems.chenup.core;
 
 // © 2025 Stephen W. Strom
 // Licensed under the MIT License. See LICENSE file in the project root for details.
-public abstract class AbstractPersistenceManager implements PersistenceManager {
+public abstract class AbstractPersistenceManager<C extends PersistenceContext> implements PersistenceManager<C> {
 }
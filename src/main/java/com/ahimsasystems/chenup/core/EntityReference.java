@@ -0,0 +1,11 @@
+package com.ahimsasystems.chenup.core;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A field of a generated type that refers to an entity, such as a relationship endpoint, with the column that holds the entity's id.
+ * The mappers list theirs in references(), which is what graph loading follows.
+ */
+public record EntityReference(String field, String column, Class entityType) {
+}
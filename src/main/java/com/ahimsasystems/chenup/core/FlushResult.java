@@ -0,0 +1,55 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The outcome of a batched flush, reported per object.
+ * <p>
+ * Every object that was sent to the database has an entry in the update counts, in the order it was flushed.
+ * An object whose stored version (the THING table in Postgres, the object's key in FoundationDB) did not match its in-memory
+ * version is reported as a version conflict with an update count of 0. Conflicting objects are not written and are left pending in the PersistenceManager,
+ * so the caller can decide whether to roll back the transaction or refresh and retry.
+ */
+public class FlushResult {
+
+    private final Map<UUID, Integer> updateCounts = new LinkedHashMap<>();
+    private final Set<UUID> versionConflicts = new LinkedHashSet<>();
+
+    public void addUpdateCount(UUID id, int updateCount) {
+        updateCounts.put(id, updateCount);
+    }
+
+    public void addVersionConflict(UUID id) {
+        updateCounts.put(id, 0);
+        versionConflicts.add(id);
+    }
+
+    public void addAll(FlushResult other) {
+        updateCounts.putAll(other.updateCounts);
+        versionConflicts.addAll(other.versionConflicts);
+    }
+
+    public Map<UUID, Integer> getUpdateCounts() {
+        return Collections.unmodifiableMap(updateCounts);
+    }
+
+    public Set<UUID> getVersionConflicts() {
+        return Collections.unmodifiableSet(versionConflicts);
+    }
+
+    public boolean hasVersionConflicts() {
+        return !versionConflicts.isEmpty();
+    }
+
+    public int getFlushedCount() {
+        return updateCounts.size() - versionConflicts.size();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The identity map of a PersistenceManager: at most one in-memory instance per id, together with the interface type it was created or read as.
+ * <p>
+ * Objects that have changes waiting to be flushed (new and dirty objects) are pinned and always held strongly.
+ * What happens to the other, clean, objects depends on the implementation: StrongIdentityMap keeps them until they are removed,
+ * ReferenceIdentityMap lets the garbage collector reclaim them once the application no longer references them,
+ * and LruIdentityMap keeps only a bounded number of the most recently used ones.
+ * <p>
+ * Implementations are not thread-safe; they are guarded by the PersistenceManager that owns them.
+ */
+public interface IdentityMap {
+
+    /** Returns the object with this id, or null. Counts as a hit or a miss in the statistics. */
+    PersistenceCapable get(UUID id);
+
+    Class getInterfaceType(UUID id);
+
+    /** Like get() being non-null, but not counted in the statistics. */
+    boolean containsKey(UUID id);
+
+    void put(PersistenceCapable object, Class interfaceType);
+
+    void remove(UUID id);
+
+    /** Holds the object strongly until unpin() is called, so it cannot be evicted while it has unflushed changes. */
+    void pin(UUID id);
+
+    void unpin(UUID id);
+
+    int size();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /** Number of clean objects dropped by the map itself, through garbage collection or the size bound. */
+    long getEvictionCount();
+
+    default double getHitRate() {
+        long lookups = getHitCount() + getMissCount();
+        return lookups == 0 ? 0.0 : (double) getHitCount() / lookups;
+    }
+}
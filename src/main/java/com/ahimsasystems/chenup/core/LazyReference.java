@@ -0,0 +1,77 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A reference to another persistent object, held by its id and read the first time it is followed.
+ * <p>
+ * The generated Impls use it for LAZY entity references. The mapper loads only the id, and writes only the id back,
+ * so the referenced entity is never read unless the application asks for it. When it does, the session resolves it,
+ * from its identity map if the object is already loaded, otherwise with a read through the session's open context.
+ * The resolved object is kept, so following the reference again costs nothing.
+ * <p>
+ * The reference itself never changes; setting the field replaces it.
+ */
+public final class LazyReference<T extends PersistenceCapable> {
+    private final UUID id;
+    private final Class<T> type;
+    // Written at most once, by whichever thread resolves it first. Both would find the same object in the identity map.
+    private volatile T target;
+
+    private LazyReference(UUID id, Class<T> type, T target) {
+        this.id = id;
+        this.type = type;
+        this.target = target;
+    }
+
+    /** A reference to an object the caller already has, so it is resolved from the start. Null for a null object. */
+    public static <T extends PersistenceCapable> LazyReference<T> of(T target, Class<T> type) {
+        return target != null ? new LazyReference<>(target.getId(), type, target) : null;
+    }
+
+    /** A reference to the object with this id, not yet read. Null for a null id. */
+    public static <T extends PersistenceCapable> LazyReference<T> to(UUID id, Class<T> type) {
+        return id != null ? new LazyReference<>(id, type, null) : null;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public boolean isResolved() {
+        return target != null;
+    }
+
+    /** The referenced object, resolved through the given session the first time. Null if there is no such object in the database. */
+    public T get(PersistenceManager<?> session) {
+        T resolved = target;
+        if (resolved == null) {
+            resolved = session.resolve(id, type);
+            target = resolved;
+        }
+        return resolved;
+    }
+
+    // Two references are equal if they refer to the same object, whether or not either has been resolved.
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LazyReference<?> other && id.equals(other.id) && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "LazyReference{" + type.getSimpleName() + " " + id + (target != null ? ", resolved" : "") + '}';
+    }
+}
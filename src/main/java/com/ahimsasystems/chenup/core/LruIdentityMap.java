@@ -0,0 +1,71 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Keeps at most maxSize clean objects, evicting the least recently used one when the bound is exceeded. Pinned objects do not count.
+ * <p>
+ * Unlike ReferenceIdentityMap, this can evict an object the application still holds. If it is read again, the read returns a new
+ * instance. Use this when a hard bound on memory matters more than identity of long-held clean objects.
+ */
+public class LruIdentityMap extends AbstractIdentityMap {
+
+    private record Entry(PersistenceCapable object, Class interfaceType) {
+    }
+
+    private final int maxSize;
+    private final Map<UUID, Entry> entries;
+
+    public LruIdentityMap(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > LruIdentityMap.this.maxSize) {
+                    recordEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    protected PersistenceCapable getUnpinned(UUID id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.object() : null;
+    }
+
+    @Override
+    protected Class getUnpinnedInterfaceType(UUID id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.interfaceType() : null;
+    }
+
+    @Override
+    protected void putUnpinned(UUID id, PersistenceCapable object, Class interfaceType) {
+        entries.put(id, new Entry(object, interfaceType));
+    }
+
+    @Override
+    protected void removeUnpinned(UUID id) {
+        entries.remove(id);
+    }
+
+    @Override
+    protected int unpinnedSize() {
+        return entries.size();
+    }
+}
@@ -7,9 +7,9 @@ import io.quarkus.runtime.annotations.RegisterForReflection;
 @RegisterForReflection
 public interface PersistenceInitializer {
     /**
-     * Registers all classes that need to be persisted with the given PersistenceManager.
+     * Registers all classes that need to be persisted with the given PersistenceRegistry.
      *
-     * @param pm the PersistenceManager to register classes with
+     * @param pm the PersistenceRegistry to register classes with
      */
-    void registerAll(PersistenceManager pm);
+    void registerAll(PersistenceRegistry pm);
 }
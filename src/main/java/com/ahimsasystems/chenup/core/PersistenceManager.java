@@ -1,40 +1,45 @@
 package com.ahimsasystems.chenup.core;
 
-import com.ahimsasystems.chenup.postgresdb.PostgresContext;
 import org.jetbrains.annotations.NotNull;
 
-import java.sql.Connection;
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
-import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-public interface PersistenceManager{
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// C is the backend's context, the connection or transaction the reads run in: PostgresContext for PostgreSQL, FdbContext for FoundationDB.
+public interface PersistenceManager<C extends PersistenceContext> {
     // These are the usual user-facing methods
     void dirty(PersistenceCapable pc);
 
 
     public Object create(@NotNull Class interfaceClass);
 
-    public <T extends PersistenceCapable> T read(UUID id, Class interfaceClass, PostgresContext context) ;
+    public <T extends PersistenceCapable> T read(UUID id, Class interfaceClass, C context) ;
 
-    // These are the methods used more by the framework itself, not by the user.
-    // I feel like they should be pulled from this interface and put into an extension interface.
-    void registerMapper(Class theClass, Supplier<?> mapperConstructor);
+    // Multi-get: already-loaded objects come from the identity map, the rest are loaded together. Results follow the order of ids.
+    public <T extends PersistenceCapable> List<T> readAll(Collection<UUID> ids, Class interfaceClass, C context);
 
-    void registerType(Class theClass, Supplier<?> typeConstructor);
+    // Follows a LazyReference: the object from the identity map if it is loaded, else read through the session's open context.
+    public <T extends PersistenceCapable> T resolve(UUID id, Class interfaceClass);
 
-    Supplier<?> getMapper(Class theClass);
+    // The methods used by the framework itself, registerMapper() and so on, are in PersistenceRegistry.
+    // A PersistenceManager is a session over a registry, holding the state of one unit of work.
 
-    // This is a placeholder for being able to find an object by a SQL query.
+    // Find objects by a query in the backend's own language, SQL for PostgreSQL. Backends without one, like FoundationDB, throw UnsupportedOperationException.
     // The query string itself should return a set of IDs, which will then be used to fetch the objects.
-    // The IDS should be UUIDs, and the method should return a set of objects that match the query.
-        // Example: SQL query could be "SELECT id FROM person WHERE name = 'John Smith'"
-
-        // public Set<T> find(String sql, Class interfaceClass);
+    // The IDS should be UUIDs, and the method returns a lazily evaluated stream of the objects that match the query.
+    // The stream must be closed when done with it.
+        // Example: SQL query could be "SELECT id FROM person WHERE name = ?", with "John Smith" as the parameter.
 
         // Here's another example, to find all employments for a given person:
     // Example : SQL query could be "SELECT id FROM employment WHERE person_id = ?"
 
+    public <T extends PersistenceCapable> Stream<T> find(String sql, Class interfaceClass, C context, Object... parameters);
+
 
 
 
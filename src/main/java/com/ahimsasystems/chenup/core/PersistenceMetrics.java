@@ -0,0 +1,47 @@
+package com.ahimsasystems.chenup.core;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Receives timings and counts from the persistence layer. Set one on the persistence manager to find slow types without a profiler.
+ * <p>
+ * The methods are called on the request threads, inline with the work they describe, so implementations must be thread-safe and cheap.
+ * Every method has an empty default, and NOOP, the default listener, implements none of them.
+ * RecordingPersistenceMetrics is an implementation that keeps counts and latency histograms in memory.
+ * <p>
+ * Times are in nanoseconds. The type is the interface class the objects were registered under.
+ */
+public interface PersistenceMetrics {
+
+    PersistenceMetrics NOOP = new PersistenceMetrics() {
+    };
+
+    /** A database read of one or more objects of one type, by id or by query. Reads served from the identity map or the second-level cache are not included. */
+    default void read(Class type, int objectCount, long nanos) {
+    }
+
+    /** One upsert statement or batch of one type. The version check is part of the same statement, so it is included here. */
+    default void upsert(Class type, int objectCount, long nanos) {
+    }
+
+    /** A COPY bulk load of new objects of one type. */
+    default void bulkLoad(Class type, int objectCount, long nanos) {
+    }
+
+    /** Objects of one type whose write was refused because their version was stale. */
+    default void versionConflicts(Class type, int count) {
+    }
+
+    /** A complete flush: the number of objects written and the total time, including all types. */
+    default void flush(int objectCount, long nanos) {
+    }
+
+    /** A lookup in a session's identity map before a read, and whether the object was already there. */
+    default void identityMapLookup(Class type, boolean hit) {
+    }
+
+    /** The size of a session's identity map, reported after each flush. */
+    default void identityMapSize(int size) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.function.Supplier;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The framework-facing side of persistence: where the generated PersistenceInitializer registers the types and mappers.
+ * Registration happens once, at startup. The registry is shared by every PersistenceManager session opened from it.
+ */
+public interface PersistenceRegistry {
+
+    // The mapper constructor is called once at registration; mappers are stateless and shared by all callers.
+    void registerMapper(Class theClass, Supplier<?> mapperConstructor);
+
+    // The FoundationDB mapper of the same type. Registries of other backends ignore it, as the FoundationDB registry ignores registerMapper().
+    default void registerFdbMapper(Class theClass, Supplier<?> mapperConstructor) {
+    }
+
+    void registerType(Class theClass, Supplier<?> typeConstructor);
+
+    Object getMapper(Class theClass);
+}
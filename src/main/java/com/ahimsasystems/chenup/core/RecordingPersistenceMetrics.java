@@ -0,0 +1,212 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A PersistenceMetrics that keeps everything in memory, for exporting to whatever monitoring system the application uses.
+ * <p>
+ * Each operation of each type has a count of calls, a count of objects and a latency histogram. Recording is a few LongAdder increments
+ * and one atomic increment in a histogram bucket, with no locks and no allocation once a type has been seen, so it is cheap enough to leave on.
+ */
+public class RecordingPersistenceMetrics implements PersistenceMetrics {
+
+    public enum Operation {
+        READ,
+        UPSERT,
+        BULK_LOAD,
+        FLUSH
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    /**
+     * A latency histogram with power-of-two buckets: bucket n counts the times from 2^n up to 2^(n+1) - 1 nanoseconds.
+     * That is coarse, but good enough to see which types are slow and to estimate percentiles within a factor of two.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder objects = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(int objectCount, long nanos) {
+            long value = Math.max(nanos, 1);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            objects.add(objectCount);
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        /** Number of calls recorded. */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** Number of objects across all the calls recorded. */
+        public long getObjectCount() {
+            return objects.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanNanos() {
+            long calls = getCount();
+            return calls == 0 ? 0.0 : (double) getTotalNanos() / calls;
+        }
+
+        /** The upper bound of the bucket holding the given percentile, between 0 and 100. */
+        public long getPercentileNanos(double percentile) {
+            long calls = getCount();
+            if (calls == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(calls * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return getMaxNanos();
+        }
+
+        public long getBucket(int index) {
+            return buckets.get(index);
+        }
+    }
+
+    // The histograms of each type, indexed by operation ordinal. All of a type's are created when it is first seen, so looking one up
+    // afterwards is a map get and an array index, without building a key.
+    private final Map<Class, Histogram[]> histograms = new ConcurrentHashMap<>();
+    private final Map<Class, LongAdder> versionConflicts = new ConcurrentHashMap<>();
+    private final LongAdder identityMapHits = new LongAdder();
+    private final LongAdder identityMapMisses = new LongAdder();
+    private volatile int lastIdentityMapSize;
+    private final LongAccumulator maxIdentityMapSize = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public void read(Class type, int objectCount, long nanos) {
+        histogram(type, Operation.READ).record(objectCount, nanos);
+    }
+
+    @Override
+    public void upsert(Class type, int objectCount, long nanos) {
+        histogram(type, Operation.UPSERT).record(objectCount, nanos);
+    }
+
+    @Override
+    public void bulkLoad(Class type, int objectCount, long nanos) {
+        histogram(type, Operation.BULK_LOAD).record(objectCount, nanos);
+    }
+
+    @Override
+    public void versionConflicts(Class type, int count) {
+        versionConflicts.computeIfAbsent(type, k -> new LongAdder()).add(count);
+    }
+
+    // A flush covers all types, so it is recorded under the PersistenceCapable interface itself.
+    @Override
+    public void flush(int objectCount, long nanos) {
+        histogram(PersistenceCapable.class, Operation.FLUSH).record(objectCount, nanos);
+    }
+
+    @Override
+    public void identityMapLookup(Class type, boolean hit) {
+        if (hit) {
+            identityMapHits.increment();
+        } else {
+            identityMapMisses.increment();
+        }
+    }
+
+    @Override
+    public void identityMapSize(int size) {
+        lastIdentityMapSize = size;
+        maxIdentityMapSize.accumulate(size);
+    }
+
+    /** Returns the histogram for this type and operation, which is empty if nothing has been recorded. Flushes are under PersistenceCapable.class. */
+    public Histogram getHistogram(Class type, Operation operation) {
+        return histogram(type, operation);
+    }
+
+    /** The histograms recorded so far, as type and operation pairs, for exporting. */
+    public Map<Class, Map<Operation, Histogram>> getHistograms() {
+        Map<Class, Map<Operation, Histogram>> result = new HashMap<>();
+        histograms.forEach((type, byOperation) -> {
+            for (Operation operation : OPERATIONS) {
+                Histogram histogram = byOperation[operation.ordinal()];
+                if (histogram.getCount() > 0) {
+                    result.computeIfAbsent(type, k -> new EnumMap<>(Operation.class)).put(operation, histogram);
+                }
+            }
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    public long getVersionConflicts(Class type) {
+        LongAdder adder = versionConflicts.get(type);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long getTotalVersionConflicts() {
+        return versionConflicts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getIdentityMapHits() {
+        return identityMapHits.sum();
+    }
+
+    public long getIdentityMapMisses() {
+        return identityMapMisses.sum();
+    }
+
+    public double getIdentityMapHitRate() {
+        long hits = getIdentityMapHits();
+        long lookups = hits + getIdentityMapMisses();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public int getLastIdentityMapSize() {
+        return lastIdentityMapSize;
+    }
+
+    public long getMaxIdentityMapSize() {
+        return maxIdentityMapSize.get();
+    }
+
+    private Histogram histogram(Class type, Operation operation) {
+        Histogram[] byOperation = histograms.get(type);
+        if (byOperation == null) {
+            byOperation = histograms.computeIfAbsent(type, k -> newHistograms());
+        }
+        return byOperation[operation.ordinal()];
+    }
+
+    private static Histogram[] newHistograms() {
+        Histogram[] byOperation = new Histogram[OPERATIONS.length];
+        for (int i = 0; i < byOperation.length; i++) {
+            byOperation[i] = new Histogram();
+        }
+        return byOperation;
+    }
+}
@@ -0,0 +1,136 @@
+package com.ahimsasystems.chenup.core;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Holds clean objects through weak or soft references, so they stay in the map exactly as long as something else needs them.
+ * <p>
+ * With weak references an object is dropped as soon as the application stops referencing it, which keeps memory proportional to
+ * what the application is actually holding. Soft references additionally keep recently read objects around until the heap is under
+ * pressure, which trades memory for fewer re-reads. Either way identity is preserved: an object can only be evicted once nothing else
+ * can observe it, so a later read creating a fresh instance is indistinguishable from the original.
+ * <p>
+ * Entries whose referent was collected are expunged on each access and counted as evictions.
+ */
+public class ReferenceIdentityMap extends AbstractIdentityMap {
+
+    public enum Strength {
+        WEAK,
+        SOFT
+    }
+
+    private interface KeyedReference {
+        UUID id();
+
+        Class interfaceType();
+
+        PersistenceCapable get();
+    }
+
+    private static final class WeakEntry extends WeakReference<PersistenceCapable> implements KeyedReference {
+        private final UUID id;
+        private final Class interfaceType;
+
+        WeakEntry(PersistenceCapable object, Class interfaceType, ReferenceQueue<PersistenceCapable> queue) {
+            super(object, queue);
+            this.id = object.getId();
+            this.interfaceType = interfaceType;
+        }
+
+        public UUID id() {
+            return id;
+        }
+
+        public Class interfaceType() {
+            return interfaceType;
+        }
+    }
+
+    private static final class SoftEntry extends SoftReference<PersistenceCapable> implements KeyedReference {
+        private final UUID id;
+        private final Class interfaceType;
+
+        SoftEntry(PersistenceCapable object, Class interfaceType, ReferenceQueue<PersistenceCapable> queue) {
+            super(object, queue);
+            this.id = object.getId();
+            this.interfaceType = interfaceType;
+        }
+
+        public UUID id() {
+            return id;
+        }
+
+        public Class interfaceType() {
+            return interfaceType;
+        }
+    }
+
+    private final Strength strength;
+    private final Map<UUID, KeyedReference> references = new HashMap<>();
+    private final ReferenceQueue<PersistenceCapable> queue = new ReferenceQueue<>();
+
+    public ReferenceIdentityMap() {
+        this(Strength.WEAK);
+    }
+
+    public ReferenceIdentityMap(Strength strength) {
+        this.strength = strength;
+    }
+
+    public Strength getStrength() {
+        return strength;
+    }
+
+    @Override
+    protected PersistenceCapable getUnpinned(UUID id) {
+        expunge();
+        KeyedReference reference = references.get(id);
+        return reference != null ? reference.get() : null;
+    }
+
+    @Override
+    protected Class getUnpinnedInterfaceType(UUID id) {
+        KeyedReference reference = references.get(id);
+        return reference != null && reference.get() != null ? reference.interfaceType() : null;
+    }
+
+    @Override
+    protected void putUnpinned(UUID id, PersistenceCapable object, Class interfaceType) {
+        expunge();
+        references.put(id, strength == Strength.WEAK
+                ? new WeakEntry(object, interfaceType, queue)
+                : new SoftEntry(object, interfaceType, queue));
+    }
+
+    @Override
+    protected void removeUnpinned(UUID id) {
+        references.remove(id);
+    }
+
+    @Override
+    protected int unpinnedSize() {
+        expunge();
+        return references.size();
+    }
+
+    private void expunge() {
+        Reference<? extends PersistenceCapable> collected;
+        while ((collected = queue.poll()) != null) {
+            UUID id = ((KeyedReference) collected).id();
+            // The id may have been re-registered with a new reference since this one was enqueued.
+            if (references.get(id) == collected) {
+                references.remove(id);
+                recordEviction();
+            }
+        }
+    }
+}
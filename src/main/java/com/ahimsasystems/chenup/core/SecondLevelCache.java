@@ -0,0 +1,187 @@
+package com.ahimsasystems.chenup.core;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A cache of object state shared by all sessions, below their identity maps.
+ * <p>
+ * The cache holds snapshots, never objects: the field values of an object as it was read, with its version and deleted flag from THING.
+ * Each session that hits the cache gets its own new object materialized from the snapshot, so sessions never share mutable objects
+ * and each copy carries the version it was read at. Optimistic locking therefore works exactly as it does for objects read from the database:
+ * a write based on a snapshot that has since gone stale fails with a version conflict instead of overwriting the newer row.
+ * <p>
+ * Snapshots of an id are invalidated whenever a session flushes that id. Writes made outside this application are not seen;
+ * the time-to-live bounds how long such a snapshot can be served. When the cache is full, the least recently used snapshot is evicted.
+ * <p>
+ * The cache is thread-safe. Every operation is a short map access under the cache's lock.
+ */
+public class SecondLevelCache {
+
+    /**
+     * The state of one object. The values are in the mapper's field order, with referenced entities stored as their ids.
+     * Values must be immutable, which holds for the field types the mappers support: strings, boxed primitives, java.time types, UUIDs and records.
+     */
+    public static final class Snapshot {
+        private final Class interfaceType;
+        private final UUID id;
+        private final Object[] values;
+        private final int version;
+        private final boolean deleted;
+
+        public Snapshot(Class interfaceType, UUID id, Object[] values, int version, boolean deleted) {
+            this.interfaceType = interfaceType;
+            this.id = id;
+            this.values = values.clone();
+            this.version = version;
+            this.deleted = deleted;
+        }
+
+        public Class getInterfaceType() {
+            return interfaceType;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public Object get(int index) {
+            return values[index];
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot[" + interfaceType.getSimpleName() + " " + id + " v" + version + " " + Arrays.toString(values) + "]";
+        }
+    }
+
+    private record Entry(Snapshot snapshot, long loadedAtNanos) {
+    }
+
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final Map<UUID, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxSize    the maximum number of snapshots held
+     * @param timeToLive how long a snapshot may be served after it was read from the database
+     */
+    public SecondLevelCache(int maxSize, Duration timeToLive) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1, was " + maxSize);
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive, was " + timeToLive);
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > SecondLevelCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Returns the snapshot of this id, or null if there is none or it has outlived the time-to-live. */
+    public synchronized Snapshot get(UUID id) {
+        Entry entry = entries.get(id);
+        if (entry != null && System.nanoTime() - entry.loadedAtNanos() > timeToLiveNanos) {
+            entries.remove(id);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.snapshot();
+    }
+
+    /**
+     * Stores a snapshot just read from the database. A snapshot with a lower version than the one already held is ignored,
+     * so a slow reader cannot replace newer state with older state.
+     */
+    public synchronized void put(Snapshot snapshot) {
+        Entry existing = entries.get(snapshot.getId());
+        if (existing != null && existing.snapshot().getVersion() > snapshot.getVersion()) {
+            return;
+        }
+        entries.put(snapshot.getId(), new Entry(snapshot, System.nanoTime()));
+    }
+
+    public synchronized void invalidate(UUID id) {
+        if (entries.remove(id) != null) {
+            invalidations++;
+        }
+    }
+
+    public synchronized void invalidateAll(Collection<UUID> ids) {
+        for (UUID id : ids) {
+            invalidate(id);
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLiveNanos);
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /** Snapshots dropped because the cache was full or their time-to-live had passed. */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /** Snapshots dropped because their id was flushed. */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ahimsasystems.chenup.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Holds every object strongly and never evicts. This is the original behaviour, and is only suitable when the PersistenceManager is short-lived.
+ */
+public class StrongIdentityMap extends AbstractIdentityMap {
+
+    private final Map<UUID, PersistenceCapable> objects = new HashMap<>();
+    private final Map<UUID, Class> interfaceTypes = new HashMap<>();
+
+    @Override
+    protected PersistenceCapable getUnpinned(UUID id) {
+        return objects.get(id);
+    }
+
+    @Override
+    protected Class getUnpinnedInterfaceType(UUID id) {
+        return interfaceTypes.get(id);
+    }
+
+    @Override
+    protected void putUnpinned(UUID id, PersistenceCapable object, Class interfaceType) {
+        objects.put(id, object);
+        interfaceTypes.put(id, interfaceType);
+    }
+
+    @Override
+    protected void removeUnpinned(UUID id) {
+        objects.remove(id);
+        interfaceTypes.remove(id);
+    }
+
+    @Override
+    protected int unpinnedSize() {
+        return objects.size();
+    }
+}
@@ -4,42 +4,123 @@ package com.ahimsasystems.chenup.core;
 // Licensed under the MIT License. See LICENSE file in the project root for details.
 
 
-import java.nio.ByteBuffer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Generates UUIDv7 ids (RFC 9562) that are strictly increasing within this JVM.
+ * <p>
+ * The 12 rand_a bits after the millisecond timestamp are used as a counter, as in the RFC's "fixed bit-length dedicated counter" method.
+ * The first id in a millisecond starts the counter at a random value in its lower half, leaving at least 2048 ids of headroom.
+ * Later ids in the same millisecond increment it. If the counter runs out, it carries into the timestamp, so ids run a millisecond
+ * or so ahead of the clock rather than going out of order. The same happens if the clock steps backwards.
+ * Ordered ids keep inserts into the primary key indexes append-only.
+ * <p>
+ * The timestamp and counter are kept together in one AtomicLong and advanced with a compare-and-set, so there is no lock.
+ * The remaining 62 bits, and the counter's starting points, come from a SecureRandom, as RFC 9562 recommends, so an id does not give
+ * away the ones generated after it. Each thread has a generator of its own, so threads do not wait on each other's, and takes the bits
+ * from a buffer it refills in bulk, so nothing is allocated per id apart from the UUID itself. A thread seeds its generator the first time
+ * it generates an id, which takes some microseconds; that includes each virtual thread.
+ */
 public class UUIDv7Generator {
 
-    private static final SecureRandom random = new SecureRandom();
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long TIMESTAMP_MASK = 0xFFFFFFFFFFFFL;
 
-    public static UUID generateUUIDv7() {
-        long timestamp = Instant.now().toEpochMilli(); // 48 bits needed
-        byte[] rndBytes = new byte[10]; // 80 bits of randomness
-        random.nextBytes(rndBytes);
+    // The last timestamp and counter handed out, as (milliseconds << 12) | counter.
+    private static final AtomicLong lastTimestampAndCounter = new AtomicLong();
 
-        long msb = 0;
-        long lsb = 0;
+    private static final ThreadLocal<Entropy> ENTROPY = ThreadLocal.withInitial(Entropy::new);
 
-        // 48 bits timestamp
-        msb |= (timestamp & 0xFFFFFFFFFFFFL) << 16;
+    public static UUID generateUUIDv7() {
+        Entropy entropy = ENTROPY.get();
+        return toUUID(reserve(1, entropy), entropy);
+    }
 
-        // 4 bits version (0111 for version 7)
-        msb |= 0x7000L;
+    /**
+     * Generates n ids at once, in increasing order, for example for a bulk load.
+     * A single compare-and-set reserves the whole range, so a batch costs about the same as one id plus the UUID objects.
+     */
+    public static UUID[] generate(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of ids must not be negative, was " + n);
+        }
+        UUID[] ids = new UUID[n];
+        if (n == 0) {
+            return ids;
+        }
+        Entropy entropy = ENTROPY.get();
+        long first = reserve(n, entropy);
+        for (int i = 0; i < n; i++) {
+            ids[i] = toUUID(first + i, entropy);
+        }
+        return ids;
+    }
 
-        // 12 bits from random
-        msb |= ((rndBytes[0] & 0xFFL) << 4) | ((rndBytes[1] & 0xF0L) >> 4);
+    // Reserves n consecutive timestamp-and-counter values and returns the first.
+    private static long reserve(int n, Entropy entropy) {
+        while (true) {
+            long last = lastTimestampAndCounter.get();
+            long now = System.currentTimeMillis() << COUNTER_BITS;
+            long first;
+            if (now > last) {
+                // A new millisecond. Start the counter at a random point in its lower half.
+                first = now | (entropy.nextLong() & (COUNTER_MASK >>> 1));
+            } else {
+                first = last + 1;
+            }
+            if (lastTimestampAndCounter.compareAndSet(last, first + n - 1)) {
+                return first;
+            }
+        }
+    }
 
-        // 4 bits variant (10xx)
-        lsb |= (0x80L | ((rndBytes[1] & 0x0FL))) << 56;
+    private static UUID toUUID(long timestampAndCounter, Entropy entropy) {
+        long timestamp = (timestampAndCounter >>> COUNTER_BITS) & TIMESTAMP_MASK;
+        long counter = timestampAndCounter & COUNTER_MASK;
 
-        // Remaining 56 bits of randomness
-        for (int i = 2; i < 10; i++) {
-            lsb |= (rndBytes[i] & 0xFFL) << (56 - 8 * (i - 2));
-        }
+        // 48 bits timestamp, 4 bits version (0111 for version 7), 12 bits counter
+        long msb = (timestamp << 16) | 0x7000L | counter;
+
+        // 2 bits variant (10), then 62 random bits
+        long lsb = (entropy.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
 
         return new UUID(msb, lsb);
     }
 
+    // The random bits of one thread. A DRBG rather than the default SecureRandom, which on Linux reads /dev/urandom under a lock
+    // that every instance shares; a DRBG only uses the system's entropy to seed itself.
+    private static final class Entropy {
+        private static final int BUFFER_BYTES = 512;
+        private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+        private final SecureRandom random;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int position = BUFFER_BYTES;
+
+        Entropy() {
+            try {
+                random = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("No DRBG SecureRandom for UUIDv7 ids", e);
+            }
+        }
+
+        long nextLong() {
+            if (position == BUFFER_BYTES) {
+                random.nextBytes(buffer);
+                position = 0;
+            }
+            long value = (long) LONGS.get(buffer, position);
+            position += Long.BYTES;
+            return value;
+        }
+    }
 
 }
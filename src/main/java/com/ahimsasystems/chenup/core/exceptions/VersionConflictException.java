@@ -0,0 +1,22 @@
+package com.ahimsasystems.chenup.core.exceptions;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+public class VersionConflictException extends RuntimeException {
+    private final Object id;
+    private final int expectedVersion;
+
+    public VersionConflictException(Object id, int expectedVersion) {
+        super("Version mismatch for object with ID: " + id + ". Expected version " + expectedVersion + " in THING but the stored version differs.");
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
@@ -0,0 +1,266 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.EntityReference;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.tuple.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The part of the FoundationDB mappers that is the same for every type. The generated subclasses only convert the fields.
+ * <p>
+ * Every object is one key-value pair under the manager's key prefix:
+ * <pre>
+ *     (prefix, "o", table, id) = (version, deleted, field 1, field 2, ...)
+ * </pre>
+ * The version and the deleted flag are kept in the value, where PostgreSQL keeps them in THING, so reading an object and checking its
+ * version is a single get. Fields are encoded by FdbValues; entity references are stored as the referenced id.
+ * Each entity reference also has an index entry, so the relationships that refer to an entity can be found with a range read:
+ * <pre>
+ *     (prefix, "r", table, field, referenced id, id) = ()
+ * </pre>
+ * Reads of many objects issue all their gets before waiting for any, so they run in parallel on the cluster.
+ * Objects are spread over the key space by their ids, which is what lets FoundationDB scale the writes of a busy type across its storage servers.
+ */
+public abstract class FdbAbstractMapper implements FdbMapper {
+
+    private static final String OBJECTS = "o";
+    private static final String REFERENCES = "r";
+    private static final byte[] EMPTY = new byte[0];
+
+    // The value holds the version and the deleted flag before the fields.
+    private static final int FIRST_FIELD = 2;
+
+    /** The name of the type's key space, the same as its PostgreSQL table. */
+    protected abstract String tableName();
+
+    /** The fields, in the order they are stored in the value. */
+    protected abstract List<String> fieldNames();
+
+    /** The Tuple elements of the object's fields, in field order, with entity references as their ids. */
+    protected abstract List<Object> encodeFields(PersistenceCapable object);
+
+    /** Creates the object and loads its fields from the elements encodeFields() wrote. The metadata is set by the caller. */
+    protected abstract AbstractPersistenceCapable decodeFields(UUID id, List<Object> fields, FdbContext context);
+
+    /** The fields of this type that refer to entities, in field order. Generated. */
+    public List<EntityReference> references() {
+        return List.of();
+    }
+
+    /** The references that are loaded with the object, see loadReferences(). Generated. */
+    protected List<EntityReference> eagerReferences() {
+        return List.of();
+    }
+
+    /** The reference with the given field name. */
+    public EntityReference reference(String field) {
+        for (EntityReference reference : references()) {
+            if (reference.field().equals(field)) {
+                return reference;
+            }
+        }
+        throw new IllegalArgumentException(getClass().getSimpleName() + " has no entity reference named " + field);
+    }
+
+    /** The id the object's reference field holds, without reading the entity. Generated for types with references. */
+    public UUID referenceId(PersistenceCapable object, String field) {
+        throw new IllegalArgumentException(getClass().getSimpleName() + " has no entity reference named " + field);
+    }
+
+    /** Sets the object's reference field to the loaded entity. Generated for types with EAGER references. */
+    protected void wireReference(PersistenceCapable object, String field, PersistenceCapable entity) {
+        throw new IllegalArgumentException(getClass().getSimpleName() + " has no EAGER entity reference named " + field);
+    }
+
+    private Tuple objects(FdbContext context) {
+        return context.getSession().getPersistenceManager().getKeyPrefix().add(OBJECTS).add(tableName());
+    }
+
+    private Tuple references(String field, UUID referencedId, FdbContext context) {
+        return context.getSession().getPersistenceManager().getKeyPrefix().add(REFERENCES).add(tableName()).add(field).add(referencedId);
+    }
+
+    public PersistenceCapable read(UUID id, FdbContext context) {
+        byte[] value = context.getTransaction().get(objects(context).add(id).pack()).join();
+        return value != null ? decode(id, value, context) : null;
+    }
+
+    public List<PersistenceCapable> readAll(Collection<UUID> ids, FdbContext context) {
+        Transaction transaction = context.getTransaction();
+        Tuple objects = objects(context);
+        // All the gets are in flight before the first one is waited for.
+        Map<UUID, CompletableFuture<byte[]>> values = new LinkedHashMap<>();
+        for (UUID id : ids) {
+            values.computeIfAbsent(id, k -> transaction.get(objects.add(k).pack()));
+        }
+        List<PersistenceCapable> result = new ArrayList<>(values.size());
+        for (Map.Entry<UUID, CompletableFuture<byte[]>> entry : values.entrySet()) {
+            byte[] value = entry.getValue().join();
+            if (value != null) {
+                result.add(decode(entry.getKey(), value, context));
+            }
+        }
+        return result;
+    }
+
+    /** Reads the objects whose reference field refers to any of the ids, with one range read per id from the reference index. */
+    public List<PersistenceCapable> readReferencing(String field, Collection<UUID> ids, FdbContext context) {
+        reference(field);
+        Transaction transaction = context.getTransaction();
+        List<CompletableFuture<List<KeyValue>>> ranges = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            ranges.add(transaction.getRange(references(field, id, context).range()).asList());
+        }
+        Set<UUID> referencing = new LinkedHashSet<>();
+        for (CompletableFuture<List<KeyValue>> range : ranges) {
+            for (KeyValue entry : range.join()) {
+                Tuple key = Tuple.fromBytes(entry.getKey());
+                referencing.add(key.getUUID(key.size() - 1));
+            }
+        }
+        return readAll(referencing, context);
+    }
+
+    private PersistenceCapable decode(UUID id, byte[] value, FdbContext context) {
+        List<Object> items = Tuple.fromBytes(value).getItems();
+        List<Object> fields = new ArrayList<>(items.subList(FIRST_FIELD, items.size()));
+        // Objects written before fields were added to the type have nulls for them.
+        while (fields.size() < fieldNames().size()) {
+            fields.add(null);
+        }
+        AbstractPersistenceCapable object = decodeFields(id, fields, context);
+        object.getMetaData().setVersion(((Number) items.get(0)).intValue());
+        object.getMetaData().setDeleted((Boolean) items.get(1));
+        return object;
+    }
+
+    /**
+     * Loads the EAGER entity references of objects that were just read, one readAll() per entity type for all of them together,
+     * and wires them in. As with PostgreSQL, the session calls this after registering the objects, so cycles end in the identity map.
+     */
+    public void loadReferences(List<? extends PersistenceCapable> objects, FdbContext context) {
+        List<EntityReference> eager = eagerReferences();
+        if (objects.isEmpty() || eager.isEmpty()) {
+            return;
+        }
+        Map<Class, Set<UUID>> ids = new LinkedHashMap<>();
+        for (PersistenceCapable object : objects) {
+            for (EntityReference reference : eager) {
+                UUID id = referenceId(object, reference.field());
+                if (id != null) {
+                    ids.computeIfAbsent(reference.entityType(), type -> new LinkedHashSet<>()).add(id);
+                }
+            }
+        }
+        Map<UUID, PersistenceCapable> loaded = new HashMap<>();
+        for (Map.Entry<Class, Set<UUID>> entry : ids.entrySet()) {
+            for (PersistenceCapable entity : context.getSession().<PersistenceCapable>readAll(entry.getValue(), entry.getKey(), context)) {
+                loaded.put(entity.getId(), entity);
+            }
+        }
+        for (PersistenceCapable object : objects) {
+            for (EntityReference reference : eager) {
+                UUID id = referenceId(object, reference.field());
+                PersistenceCapable entity = id != null ? loaded.get(id) : null;
+                if (entity != null) {
+                    wireReference(object, reference.field(), entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the objects in the context's transaction, each only if the version stored for it is still the one it was read at,
+     * or, for a new object, if nothing is stored under its id. Objects that fail the check are reported as version conflicts
+     * and not written. The stored versions are read in parallel, and the reads make the transaction conflict with any other
+     * transaction that writes the same objects before it commits.
+     * <p>
+     * The objects themselves are not changed: their versions are bumped by the session once the transaction has committed,
+     * since Database.run() may run the same writes more than once.
+     */
+    public FlushResult writeAll(List<? extends PersistenceCapable> objects, FdbContext context) {
+        FlushResult result = new FlushResult();
+        Transaction transaction = context.getTransaction();
+        Tuple keys = objects(context);
+        List<CompletableFuture<byte[]>> stored = new ArrayList<>(objects.size());
+        for (PersistenceCapable object : objects) {
+            stored.add(transaction.get(keys.add(object.getId()).pack()));
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            if (!(objects.get(i) instanceof AbstractPersistenceCapable pc)) {
+                throw new IllegalArgumentException("Object must be an instance of AbstractPersistenceCapable");
+            }
+            byte[] current = stored.get(i).join();
+            int storedVersion = current != null ? (int) Tuple.fromBytes(current).getLong(0) : 0;
+            if (storedVersion != pc.getMetaData().getVersion()) {
+                result.addVersionConflict(pc.getId());
+                continue;
+            }
+            write(pc, current, keys, context);
+            result.addUpdateCount(pc.getId(), 1);
+        }
+        return result;
+    }
+
+    private void write(AbstractPersistenceCapable pc, byte[] current, Tuple keys, FdbContext context) {
+        Transaction transaction = context.getTransaction();
+        // Every field is written, so all the dirty ones are taken, before any value is read.
+        pc.takeDirtyFields();
+        List<Object> fields = encodeFields(pc);
+        Tuple value = Tuple.from(pc.getMetaData().getVersion() + 1, pc.getMetaData().isDeleted()).addAll(fields);
+        transaction.set(keys.add(pc.getId()).pack(), value.pack());
+
+        // The index entries that changed. The old ones are known from the value just read, so this costs no extra reads.
+        List<Object> old = current != null ? Tuple.fromBytes(current).getItems() : List.of();
+        for (EntityReference reference : references()) {
+            int index = fieldNames().indexOf(reference.field());
+            Object before = FIRST_FIELD + index < old.size() ? old.get(FIRST_FIELD + index) : null;
+            Object after = fields.get(index);
+            if (!Objects.equals(before, after)) {
+                if (before != null) {
+                    transaction.clear(references(reference.field(), (UUID) before, context).add(pc.getId()).pack());
+                }
+                if (after != null) {
+                    transaction.set(references(reference.field(), (UUID) after, context).add(pc.getId()).pack(), EMPTY);
+                }
+            }
+        }
+    }
+
+    /** Removes the object and its index entries. Like the PostgreSQL delete, it does not check the version. */
+    public void delete(PersistenceCapable object, FdbContext context) {
+        Transaction transaction = context.getTransaction();
+        byte[] key = objects(context).add(object.getId()).pack();
+        byte[] current = transaction.get(key).join();
+        if (current == null) {
+            return;
+        }
+        transaction.clear(key);
+        List<Object> old = Tuple.fromBytes(current).getItems();
+        for (EntityReference reference : references()) {
+            int index = fieldNames().indexOf(reference.field());
+            Object before = FIRST_FIELD + index < old.size() ? old.get(FIRST_FIELD + index) : null;
+            if (before != null) {
+                transaction.clear(references(reference.field(), (UUID) before, context).add(object.getId()).pack());
+            }
+        }
+    }
+}
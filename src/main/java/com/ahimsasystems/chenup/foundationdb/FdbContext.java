@@ -5,15 +5,40 @@ import com.apple.foundationdb.Transaction;
 
 // © 2025 Stephen W. Strom
 // Licensed under the MIT License. See LICENSE file in the project root for details.
-public class FdbContext implements PersistenceContext {
 
+/**
+ * The context for one FoundationDB transaction's worth of work, the counterpart of PostgresContext.
+ * <p>
+ * Reads and writes go through the transaction, so they see one consistent version of the database and commit or fail together.
+ * The context does not commit the transaction; that is done by whoever created it, usually Database.run(), which also retries it
+ * on a conflict. FoundationDB transactions are limited to five seconds and ten megabytes, so a context is meant for short units of work.
+ * <p>
+ * While it is open it is the context the session reads LAZY entity references through, like PostgresContext.
+ * A context is meant to be used by one thread at a time, like the session it wraps.
+ */
+public class FdbContext implements PersistenceContext, AutoCloseable {
 
-        private final Transaction transaction;
-        public FdbContext(Transaction transaction) {
-            this.transaction = transaction;
-        }
-        public Transaction getTransaction() {
-            return transaction;
-        }
+    private final Transaction transaction;
+    private final FdbSession session;
 
+    public FdbContext(Transaction transaction, FdbSession session) {
+        this.transaction = transaction;
+        this.session = session;
+        session.contextOpened(this);
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    // The session that objects read through this context are registered in.
+    public FdbSession getSession() {
+        return session;
+    }
+
+    /** Detaches the context from the session. The transaction is left alone. */
+    @Override
+    public void close() {
+        session.contextClosed(this);
+    }
 }
@@ -0,0 +1,30 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/** The FoundationDB counterpart of PostgresMapper: moves the objects of one type between memory and the key-value store. */
+public interface FdbMapper {
+
+    /** Always returns a new instance, or null if there is none. The session checks its identity map first. */
+    public PersistenceCapable read(@NotNull UUID id, FdbContext context);
+
+    /** Reads many objects of this type with parallel gets. Like read(), it always returns new instances; ids with no object are left out. */
+    public List<PersistenceCapable> readAll(@NotNull Collection<UUID> ids, FdbContext context);
+
+    /** Loads the EAGER entity references of objects just read, one readAll() per referenced type for all of them together. */
+    public void loadReferences(List<? extends PersistenceCapable> objects, FdbContext context);
+
+    /** Writes the objects with their version checks, without changing them. See FdbAbstractMapper. */
+    public FlushResult writeAll(List<? extends PersistenceCapable> objects, FdbContext context);
+
+    public void delete(PersistenceCapable object, FdbContext context);
+}
@@ -0,0 +1,107 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.ahimsasystems.chenup.core.IdentityMap;
+import com.ahimsasystems.chenup.core.PersistenceMetrics;
+import com.ahimsasystems.chenup.core.PersistenceRegistry;
+import com.ahimsasystems.chenup.core.ReferenceIdentityMap;
+import com.apple.foundationdb.tuple.Tuple;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The application-wide part of the FoundationDB persistence, the counterpart of PostgresPersistenceManager: the registries of types
+ * and FoundationDB mappers, and the configuration. Sessions are opened from here for each unit of work:
+ * <pre>
+ *     FdbSession session = persistenceManager.openSession();
+ *     Person person = database.read(transaction -> {
+ *         try (FdbContext context = new FdbContext(transaction, session)) {
+ *             return session.read(id, Person.class, context);
+ *         }
+ *     });
+ *     ...
+ *     FlushResult result = session.flush(database);
+ * </pre>
+ * The generated PersistenceInitializer registers the FoundationDB mapper of each type with registerFdbMapper(). The PostgreSQL mappers
+ * it registers with registerMapper() are ignored, so the same initializer serves both backends.
+ * <p>
+ * It is not a CDI bean, so it does not compete with the PostgresPersistenceManager for injection points; an application that uses
+ * FoundationDB produces one, usually with the Database it runs its transactions on.
+ */
+public class FdbPersistenceManager implements PersistenceRegistry {
+    // Registration order is kept so that flushes write types in the order the initializer registered them, as with PostgreSQL.
+    private volatile Map<Class, FdbAbstractMapper> mapperRegistry = Map.of();
+    private volatile Map<Class, Supplier> typeRegistry = Map.of();
+
+    // Every key this manager writes starts with it, so several applications, or a test, can share a cluster.
+    private volatile Tuple keyPrefix = Tuple.from("chenup");
+
+    // Creates the identity map of each new session.
+    private volatile Supplier<IdentityMap> identityMapFactory = ReferenceIdentityMap::new;
+
+    // Listener for timings and counts. The default does nothing.
+    private volatile PersistenceMetrics metrics = PersistenceMetrics.NOOP;
+
+    /** Registers the mapper if it is a FoundationDB mapper. Mappers for other backends are ignored. */
+    public synchronized void registerMapper(Class theClass, Supplier mapperConstructor) {
+        Object mapper = mapperConstructor.get();
+        if (mapper instanceof FdbAbstractMapper fdbMapper) {
+            Map<Class, FdbAbstractMapper> mappers = new LinkedHashMap<>(mapperRegistry);
+            mappers.put(theClass, fdbMapper);
+            mapperRegistry = Collections.unmodifiableMap(mappers);
+        }
+    }
+
+    @Override
+    public void registerFdbMapper(Class theClass, Supplier<?> mapperConstructor) {
+        registerMapper(theClass, mapperConstructor);
+    }
+
+    public synchronized void registerType(Class theClass, Supplier constructor) {
+        Map<Class, Supplier> types = new HashMap<>(typeRegistry);
+        types.put(theClass, constructor);
+        typeRegistry = Collections.unmodifiableMap(types);
+    }
+
+    @Override
+    public FdbAbstractMapper getMapper(Class theClass) {
+        return mapperRegistry.get(theClass);
+    }
+
+    /** Opens a new session with an empty identity map. */
+    public FdbSession openSession() {
+        return new FdbSession(this, mapperRegistry, typeRegistry, identityMapFactory.get());
+    }
+
+    public Tuple getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /** Changes the prefix of all keys. Existing data stays under the old prefix, so this is set once, before anything is written. */
+    public void setKeyPrefix(@NotNull Tuple keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public Supplier<IdentityMap> getIdentityMapFactory() {
+        return identityMapFactory;
+    }
+
+    public void setIdentityMapFactory(@NotNull Supplier<IdentityMap> identityMapFactory) {
+        this.identityMapFactory = identityMapFactory;
+    }
+
+    public PersistenceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(@NotNull PersistenceMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,388 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.AbstractPersistenceManager;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.IdentityMap;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.PersistenceMetrics;
+import com.apple.foundationdb.Database;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * FdbSession is the PersistenceManager for FoundationDB, for one unit of work, the counterpart of PostgresSession.
+ * It keeps the same collections: an identity map of everything it has created or read, and the new and dirty objects,
+ * pinned in the identity map until they are flushed. Like PostgresSession it is used by one thread at a time, except that the setters
+ * of VOLATILE and SNAPSHOT objects may run on any thread: dirty(), create() and the parts of a flush that change the pending objects
+ * take the session's lock.
+ * <p>
+ * Reads go through an FdbContext, in the caller's transaction. Changes are written by flush(), normally in a transaction of its own,
+ * with the same optimistic locking as PostgreSQL: each object is written only if its stored version is still the one it was read at.
+ * FoundationDB's own conflict detection then makes the check and the write atomic.
+ */
+public class FdbSession extends AbstractPersistenceManager<FdbContext> {
+    private final FdbPersistenceManager manager;
+    // Snapshots of the manager's registries, taken when the session is opened.
+    private final Map<Class, FdbAbstractMapper> mappers;
+    private final Map<Class, Supplier> types;
+    private final IdentityMap identityMap;
+
+    final private Map<UUID, PersistenceCapable> persistentNew = new HashMap<>();
+    final private Map<UUID, PersistenceCapable> persistentDirty = new HashMap<>();
+    // The most recently opened context that is still open, which lazy references are resolved through.
+    private FdbContext openContext;
+    // Guards the pending objects against setters on other threads. A ReentrantLock, so a waiting virtual thread does not pin its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    FdbSession(FdbPersistenceManager manager, Map<Class, FdbAbstractMapper> mappers, Map<Class, Supplier> types, IdentityMap identityMap) {
+        this.manager = manager;
+        this.mappers = mappers;
+        this.types = types;
+        this.identityMap = identityMap;
+    }
+
+    public FdbPersistenceManager getPersistenceManager() {
+        return manager;
+    }
+
+    public IdentityMap getIdentityMap() {
+        return identityMap;
+    }
+
+    public FdbAbstractMapper getMapper(Class theClass) {
+        return mappers.get(theClass);
+    }
+
+    private FdbAbstractMapper mapperFor(Class interfaceClass) {
+        FdbAbstractMapper mapper = mappers.get(interfaceClass);
+        if (mapper == null) {
+            throw new IllegalArgumentException("No FoundationDB mapper registered for class: " + interfaceClass.getName());
+        }
+        return mapper;
+    }
+
+    public Object create(@NotNull Class interfaceClass) {
+        var constructor = types.get(interfaceClass);
+        if (constructor == null) {
+            throw new IllegalArgumentException("No constructor registered for class: " + interfaceClass.getName());
+        }
+        if (!(constructor.get() instanceof AbstractPersistenceCapable instance)) {
+            throw new IllegalArgumentException("The class " + interfaceClass.getName() + " does not implement PersistenceCapable.");
+        }
+        instance.setPersistenceManager(this);
+        lock.lock();
+        try {
+            identityMap.put(instance, interfaceClass);
+            identityMap.pin(instance.getId());
+            persistentNew.put(instance.getId(), instance);
+        } finally {
+            lock.unlock();
+        }
+        return instance;
+    }
+
+    public <T extends PersistenceCapable> T read(UUID id, Class interfaceClass, FdbContext context) {
+        PersistenceMetrics metrics = manager.getMetrics();
+        PersistenceCapable existing = lookup(id);
+        metrics.identityMapLookup(interfaceClass, existing != null);
+        if (existing != null) {
+            return (T) existing;
+        }
+
+        FdbAbstractMapper mapper = mapperFor(interfaceClass);
+        long start = System.nanoTime();
+        PersistenceCapable result = mapper.read(id, context);
+        metrics.read(interfaceClass, result != null ? 1 : 0, System.nanoTime() - start);
+        if (result == null) {
+            return null;
+        }
+        register(result, interfaceClass);
+        // After the put, so that references back to this object find it.
+        mapper.loadReferences(List.of(result), context);
+        return (T) result;
+    }
+
+    /**
+     * Reads many objects of one type at once. Ids already in the identity map are returned from there; the others are read with
+     * parallel gets and registered, and their EAGER references are then loaded together. The result follows the order of the ids,
+     * leaving out ids with no object.
+     */
+    public <T extends PersistenceCapable> List<T> readAll(Collection<UUID> ids, Class interfaceClass, FdbContext context) {
+        PersistenceMetrics metrics = manager.getMetrics();
+        Map<UUID, PersistenceCapable> found = new HashMap<>();
+        Set<UUID> missing = new LinkedHashSet<>();
+        for (UUID id : ids) {
+            PersistenceCapable existing = lookup(id);
+            metrics.identityMapLookup(interfaceClass, existing != null);
+            if (existing != null) {
+                found.put(id, existing);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            FdbAbstractMapper mapper = mapperFor(interfaceClass);
+            long start = System.nanoTime();
+            List<PersistenceCapable> loadedObjects = mapper.readAll(missing, context);
+            metrics.read(interfaceClass, loadedObjects.size(), System.nanoTime() - start);
+            for (PersistenceCapable loaded : loadedObjects) {
+                register(loaded, interfaceClass);
+                found.put(loaded.getId(), loaded);
+            }
+            mapper.loadReferences(loadedObjects, context);
+        }
+
+        List<T> result = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            PersistenceCapable object = found.get(id);
+            if (object != null) {
+                result.add((T) object);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the objects of one type whose reference field refers to any of the ids, for example the Employments of a set of people,
+     * from the reference index. Objects already in the identity map are returned as they are.
+     */
+    public <T extends PersistenceCapable> List<T> readReferencing(Class interfaceClass, String field, Collection<UUID> ids, FdbContext context) {
+        FdbAbstractMapper mapper = mapperFor(interfaceClass);
+        long start = System.nanoTime();
+        List<PersistenceCapable> loadedObjects = mapper.readReferencing(field, ids, context);
+        manager.getMetrics().read(interfaceClass, loadedObjects.size(), System.nanoTime() - start);
+
+        List<T> result = new ArrayList<>(loadedObjects.size());
+        List<PersistenceCapable> hydrated = new ArrayList<>(loadedObjects.size());
+        for (PersistenceCapable loaded : loadedObjects) {
+            PersistenceCapable existing = lookup(loaded.getId());
+            if (existing != null) {
+                result.add((T) existing);
+            } else {
+                register(loaded, interfaceClass);
+                hydrated.add(loaded);
+                result.add((T) loaded);
+            }
+        }
+        mapper.loadReferences(hydrated, context);
+        return result;
+    }
+
+    /** FoundationDB has no query language, so there is nothing to find by. Use readAll() or readReferencing(). */
+    public <T extends PersistenceCapable> Stream<T> find(String query, Class interfaceClass, FdbContext context, Object... parameters) {
+        throw new UnsupportedOperationException("FoundationDB has no query language; use readAll() or readReferencing() instead");
+    }
+
+    /** Resolves a LazyReference, from the identity map if the object is loaded, otherwise through the session's open FdbContext. */
+    public <T extends PersistenceCapable> T resolve(UUID id, Class interfaceClass) {
+        FdbContext context = openContext;
+        if (context != null) {
+            return read(id, interfaceClass, context);
+        }
+        PersistenceCapable existing = lookup(id);
+        if (existing == null) {
+            throw new IllegalStateException("Cannot load " + interfaceClass.getSimpleName() + " " + id
+                    + " lazily, since the session has no open FdbContext. Follow the reference while a context is open, or fetch it EAGER.");
+        }
+        return (T) existing;
+    }
+
+    private PersistenceCapable lookup(UUID id) {
+        lock.lock();
+        try {
+            return identityMap.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void register(PersistenceCapable object, Class interfaceClass) {
+        lock.lock();
+        try {
+            identityMap.put(object, interfaceClass);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called by FdbContext when it is opened and closed.
+    void contextOpened(FdbContext context) {
+        openContext = context;
+    }
+
+    void contextClosed(FdbContext context) {
+        if (openContext == context) {
+            openContext = null;
+        }
+    }
+
+    public void dirty(@NotNull PersistenceCapable object) {
+        // Pinned so it cannot be evicted before it is flushed. If it was already evicted, the application still held it, so it is put back.
+        UUID id = object.getId();
+        lock.lock();
+        try {
+            if (!identityMap.containsKey(id)) {
+                identityMap.put(object, interfaceTypeOf(object));
+            }
+            identityMap.pin(id);
+            persistentDirty.put(id, object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Only needed for an object that was evicted while the application held it.
+    private Class interfaceTypeOf(PersistenceCapable object) {
+        for (Class interfaceClass : mappers.keySet()) {
+            if (interfaceClass.isInstance(object)) {
+                return interfaceClass;
+            }
+        }
+        throw new IllegalArgumentException("No mapper registered for object of class: " + object.getClass().getName());
+    }
+
+    /**
+     * Flushes the new and dirty objects in a transaction of its own, which Database.run() retries if it conflicts with another one.
+     * The session is only updated once the transaction has committed: the objects written get their new versions and are no longer
+     * pending, and objects with a version conflict are reported in the result and stay pending, as with PostgresSession.flushBatched().
+     * <p>
+     * Everything pending is written in that one transaction; nothing here splits it. A FoundationDB transaction holds at most ten
+     * megabytes of writes and must commit within five seconds, and a flush that goes past either fails with the objects left pending.
+     * Callers with large sets of changes must split them themselves, by flushing every so many objects rather than once at the end.
+     */
+    public FlushResult flush(@NotNull Database database) {
+        long flushStart = System.nanoTime();
+        FlushResult result;
+        try {
+            result = database.run(transaction -> {
+                try (FdbContext context = new FdbContext(transaction, this)) {
+                    return write(context);
+                }
+            });
+        } catch (RuntimeException e) {
+            failed();
+            throw e;
+        }
+        committed(result);
+        manager.getMetrics().flush(result.getFlushedCount(), System.nanoTime() - flushStart);
+        return result;
+    }
+
+    /**
+     * Flushes in the caller's transaction, which the caller commits. The session is updated right away, as PostgresSession.flushBatched()
+     * does, so if the transaction then fails to commit, the session no longer matches the database and should be dropped.
+     */
+    public FlushResult flush(@NotNull FdbContext context) {
+        long flushStart = System.nanoTime();
+        FlushResult result;
+        try {
+            result = write(context);
+        } catch (RuntimeException e) {
+            failed();
+            throw e;
+        }
+        committed(result);
+        manager.getMetrics().flush(result.getFlushedCount(), System.nanoTime() - flushStart);
+        return result;
+    }
+
+    // Writes every pending object, a type at a time in registration order, without changing the session or the objects.
+    private FlushResult write(FdbContext context) {
+        PersistenceMetrics metrics = manager.getMetrics();
+        // Grouped under the lock and written outside it, so setters are only held up for the grouping.
+        Map<Class, List<PersistenceCapable>> groups = new HashMap<>();
+        lock.lock();
+        try {
+            for (PersistenceCapable object : persistentNew.values()) {
+                groups.computeIfAbsent(identityMap.getInterfaceType(object.getId()), k -> new ArrayList<>()).add(object);
+            }
+            for (PersistenceCapable object : persistentDirty.values()) {
+                // An object that is both new and dirty only needs to be written once.
+                if (!persistentNew.containsKey(object.getId())) {
+                    groups.computeIfAbsent(identityMap.getInterfaceType(object.getId()), k -> new ArrayList<>()).add(object);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!mappers.keySet().containsAll(groups.keySet())) {
+            throw new IllegalStateException("No FoundationDB mapper registered for some of the classes: " + groups.keySet());
+        }
+
+        FlushResult result = new FlushResult();
+        for (Map.Entry<Class, FdbAbstractMapper> entry : mappers.entrySet()) {
+            List<PersistenceCapable> group = groups.get(entry.getKey());
+            if (group == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            FlushResult groupResult = entry.getValue().writeAll(group, context);
+            metrics.upsert(entry.getKey(), group.size(), System.nanoTime() - start);
+            if (groupResult.hasVersionConflicts()) {
+                metrics.versionConflicts(entry.getKey(), groupResult.getVersionConflicts().size());
+            }
+            result.addAll(groupResult);
+        }
+        return result;
+    }
+
+    // Nothing of a flush that failed was written, so every pending object gets back the fields its write took.
+    private void failed() {
+        lock.lock();
+        try {
+            for (PersistenceCapable object : persistentNew.values()) {
+                ((AbstractPersistenceCapable) object).writeFailed();
+            }
+            for (PersistenceCapable object : persistentDirty.values()) {
+                ((AbstractPersistenceCapable) object).writeFailed();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Brings the session up to date with a flush that has been committed.
+    private void committed(FlushResult result) {
+        lock.lock();
+        try {
+            for (UUID id : result.getUpdateCounts().keySet()) {
+                if (result.getVersionConflicts().contains(id)) {
+                    continue;
+                }
+                PersistenceCapable object = persistentNew.remove(id);
+                PersistenceCapable dirty = persistentDirty.remove(id);
+                AbstractPersistenceCapable pc = (AbstractPersistenceCapable) (object != null ? object : dirty);
+                pc.getMetaData().incrementVersion();
+                if (pc.writeCommitted()) {
+                    // Changed again while it was being written, so it stays dirty.
+                    persistentDirty.put(id, pc);
+                } else {
+                    identityMap.unpin(id);
+                }
+            }
+            for (UUID id : result.getVersionConflicts()) {
+                PersistenceCapable object = persistentNew.containsKey(id) ? persistentNew.get(id) : persistentDirty.get(id);
+                ((AbstractPersistenceCapable) object).writeFailed();
+            }
+            manager.getMetrics().identityMapSize(identityMap.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
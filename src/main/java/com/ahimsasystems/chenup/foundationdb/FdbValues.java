@@ -0,0 +1,165 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.apple.foundationdb.tuple.Tuple;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Converts field values to and from the element types of the Tuple layer.
+ * <p>
+ * Strings, booleans, UUIDs, byte arrays, doubles, floats and BigIntegers are stored as they are. All the integer types are stored
+ * as a Tuple integer, which comes back as a Long, so decode() is given the field's type to narrow it again. The other types are
+ * stored in the Tuple type that keeps them exact: BigDecimal and OffsetDateTime as their string form, LocalDate as the epoch day,
+ * LocalTime as the nano of the day, LocalDateTime and Instant as a nested tuple of two integers, enums by name.
+ * Records, the value types that PostgreSQL stores as composite types, are stored as a nested tuple of their components, recursively.
+ */
+public final class FdbValues {
+
+    private record RecordShape(RecordComponent[] components, Method[] accessors, Constructor<?> constructor) {
+    }
+
+    // The components and canonical constructor of each record type, found once by reflection.
+    private static final Map<Class<?>, RecordShape> RECORD_SHAPES = new ConcurrentHashMap<>();
+
+    private FdbValues() {
+    }
+
+    /** The Tuple element for a field value. Null stays null. */
+    public static Object encode(Object value) {
+        return switch (value) {
+            case null -> null;
+            case String s -> s;
+            case Boolean b -> b;
+            case UUID u -> u;
+            case byte[] bytes -> bytes;
+            case Double d -> d;
+            case Float f -> f;
+            case BigInteger i -> i;
+            case Long l -> l;
+            case Integer i -> i.longValue();
+            case Short s -> s.longValue();
+            case Byte b -> b.longValue();
+            case Character c -> String.valueOf(c);
+            case BigDecimal d -> d.toString();
+            case LocalDate d -> d.toEpochDay();
+            case LocalTime t -> t.toNanoOfDay();
+            case LocalDateTime t -> Tuple.from(t.toLocalDate().toEpochDay(), t.toLocalTime().toNanoOfDay());
+            case Instant t -> Tuple.from(t.getEpochSecond(), (long) t.getNano());
+            case OffsetDateTime t -> t.toString();
+            case Enum<?> e -> e.name();
+            case Record r -> encodeRecord(r);
+            default -> throw new IllegalArgumentException("No Tuple encoding for " + value.getClass().getName());
+        };
+    }
+
+    /** The field value for a Tuple element, as the given field type. Primitive types are returned boxed. */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(Object element, Class<T> type) {
+        if (element == null) {
+            return null;
+        }
+        Object value;
+        if (type == String.class || type == Boolean.class || type == boolean.class || type == UUID.class || type == byte[].class
+                || type == Double.class || type == double.class || type == BigInteger.class) {
+            value = element;
+        } else if (type == Float.class || type == float.class) {
+            value = ((Number) element).floatValue();
+        } else if (type == Long.class || type == long.class) {
+            value = ((Number) element).longValue();
+        } else if (type == Integer.class || type == int.class) {
+            value = ((Number) element).intValue();
+        } else if (type == Short.class || type == short.class) {
+            value = ((Number) element).shortValue();
+        } else if (type == Byte.class || type == byte.class) {
+            value = ((Number) element).byteValue();
+        } else if (type == Character.class || type == char.class) {
+            value = ((String) element).charAt(0);
+        } else if (type == BigDecimal.class) {
+            value = new BigDecimal((String) element);
+        } else if (type == LocalDate.class) {
+            value = LocalDate.ofEpochDay((Long) element);
+        } else if (type == LocalTime.class) {
+            value = LocalTime.ofNanoOfDay((Long) element);
+        } else if (type == LocalDateTime.class) {
+            Tuple t = (Tuple) element;
+            value = LocalDateTime.of(LocalDate.ofEpochDay(t.getLong(0)), LocalTime.ofNanoOfDay(t.getLong(1)));
+        } else if (type == Instant.class) {
+            Tuple t = (Tuple) element;
+            value = Instant.ofEpochSecond(t.getLong(0), t.getLong(1));
+        } else if (type == OffsetDateTime.class) {
+            value = OffsetDateTime.parse((String) element);
+        } else if (type.isEnum()) {
+            value = Enum.valueOf(type.asSubclass(Enum.class), (String) element);
+        } else if (type.isRecord()) {
+            value = decodeRecord((Tuple) element, type);
+        } else {
+            throw new IllegalArgumentException("No Tuple decoding for " + type.getName());
+        }
+        return (T) value;
+    }
+
+    private static Tuple encodeRecord(Record record) {
+        RecordShape shape = shapeOf(record.getClass());
+        Tuple tuple = new Tuple();
+        try {
+            for (Method accessor : shape.accessors()) {
+                tuple = tuple.addObject(encode(accessor.invoke(record)));
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to encode " + record.getClass().getName(), e);
+        }
+        return tuple;
+    }
+
+    private static Object decodeRecord(Tuple tuple, Class<?> type) {
+        RecordShape shape = shapeOf(type);
+        RecordComponent[] components = shape.components();
+        List<Object> items = tuple.getItems();
+        Object[] arguments = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            arguments[i] = decode(items.get(i), components[i].getType());
+        }
+        try {
+            return shape.constructor().newInstance(arguments);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to decode " + type.getName(), e);
+        }
+    }
+
+    private static RecordShape shapeOf(Class<?> type) {
+        return RECORD_SHAPES.computeIfAbsent(type, recordType -> {
+            RecordComponent[] components = recordType.getRecordComponents();
+            Method[] accessors = new Method[components.length];
+            Class<?>[] parameterTypes = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                // Records nested in the application's classes need not be public.
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+                parameterTypes[i] = components[i].getType();
+            }
+            try {
+                Constructor<?> constructor = recordType.getDeclaredConstructor(parameterTypes);
+                constructor.setAccessible(true);
+                return new RecordShape(components, accessors, constructor);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("No canonical constructor for " + recordType.getName(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.EntityReference;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Loads a graph of objects breadth-first into a session, for PostgresPersistenceManager.loadGraph().
+ * <p>
+ * Each level costs one query per relationship type followed, for the relationships of every object on the level at once,
+ * and one query per entity type for the endpoints they lead to. Objects already in the session are not read again,
+ * and each object is expanded once however many paths lead to it, so cycles end.
+ * <p>
+ * If the connection is in auto-commit mode, the whole load runs in one read-only REPEATABLE READ transaction, so every level
+ * sees the same snapshot of the database, and the connection's settings are restored afterwards. Otherwise it runs in the
+ * caller's transaction, which it leaves open.
+ */
+final class GraphLoader {
+
+    private GraphLoader() {
+    }
+
+    static void load(PostgresSession session, Connection connection, Class rootType, Collection<UUID> rootIds, GraphSpec spec) {
+        try {
+            boolean ownTransaction = connection.getAutoCommit();
+            if (!ownTransaction) {
+                loadLevels(session, connection, rootType, rootIds, spec);
+                return;
+            }
+
+            int isolation = connection.getTransactionIsolation();
+            boolean readOnly = connection.isReadOnly();
+            try {
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                connection.setReadOnly(true);
+                connection.setAutoCommit(false);
+                loadLevels(session, connection, rootType, rootIds, spec);
+                connection.commit();
+            } catch (RuntimeException | SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                connection.setReadOnly(readOnly);
+                connection.setTransactionIsolation(isolation);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load the object graph", e);
+        }
+    }
+
+    private static void loadLevels(PostgresSession session, Connection connection, Class rootType, Collection<UUID> rootIds, GraphSpec spec) {
+        try (PostgresContext context = new PostgresContext(connection, session)) {
+            Set<UUID> expanded = new HashSet<>(rootIds);
+            Map<Class, Set<UUID>> level = new LinkedHashMap<>();
+            level.put(rootType, idsOf(session.readAll(rootIds, rootType, context)));
+
+            for (int depth = 0; depth < spec.getDepth() && !level.isEmpty(); depth++) {
+                Map<Class, Set<UUID>> next = new LinkedHashMap<>();
+
+                for (GraphSpec.Edge edge : spec.getEdges()) {
+                    PostgresAbstractMapper mapper = session.getMapper(edge.relationshipType());
+                    if (mapper == null) {
+                        throw new IllegalArgumentException("No mapper registered for class: " + edge.relationshipType().getName());
+                    }
+                    EntityReference entered = mapper.reference(edge.endpoint());
+                    Set<UUID> from = level.get(entered.entityType());
+                    if (from == null || from.isEmpty()) {
+                        continue;
+                    }
+
+                    List<PersistenceCapable> relationships = session.readReferencing(edge.relationshipType(), edge.endpoint(), from, context);
+                    for (PersistenceCapable relationship : relationships) {
+                        for (EntityReference other : mapper.references()) {
+                            if (other.equals(entered)) {
+                                continue;
+                            }
+                            UUID id = mapper.referenceId(relationship, other.field());
+                            if (id != null && expanded.add(id)) {
+                                next.computeIfAbsent(other.entityType(), type -> new LinkedHashSet<>()).add(id);
+                            }
+                        }
+                    }
+                }
+
+                level = new LinkedHashMap<>();
+                for (Map.Entry<Class, Set<UUID>> entry : next.entrySet()) {
+                    level.put(entry.getKey(), idsOf(session.readAll(entry.getValue(), entry.getKey(), context)));
+                }
+            }
+        }
+    }
+
+    private static Set<UUID> idsOf(List<PersistenceCapable> objects) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (PersistenceCapable object : objects) {
+            ids.add(object.getId());
+        }
+        return ids;
+    }
+}
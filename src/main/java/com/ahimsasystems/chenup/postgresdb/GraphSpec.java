@@ -0,0 +1,58 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * What PostgresPersistenceManager.loadGraph() follows from the root objects: which relationship types, through which endpoint,
+ * and for how many steps.
+ * <p>
+ * follow(Employment.class, "person") means: for each Person loaded so far, load the Employments whose person endpoint is that
+ * person, and then the other endpoints of those Employments, such as their Organization. Each such step is one level.
+ * A spec is immutable; follow() and depth() return a new one, so specs can be kept in constants and shared.
+ * <pre>
+ * static final GraphSpec EMPLOYMENT_GRAPH = GraphSpec.depth(2)
+ *         .follow(Employment.class, "person")
+ *         .follow(Employment.class, "organization");
+ * </pre>
+ */
+public final class GraphSpec {
+
+    /** One relationship type, entered through one of its endpoints. */
+    public record Edge(Class relationshipType, String endpoint) {
+    }
+
+    private final int depth;
+    private final List<Edge> edges;
+
+    private GraphSpec(int depth, List<Edge> edges) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Depth must not be negative, was " + depth);
+        }
+        this.depth = depth;
+        this.edges = List.copyOf(edges);
+    }
+
+    /** An empty spec that follows at most the given number of levels. With depth 0 only the roots are loaded. */
+    public static GraphSpec depth(int depth) {
+        return new GraphSpec(depth, List.of());
+    }
+
+    /** This spec, also following the relationships of the given type whose endpoint refers to an object already loaded. */
+    public GraphSpec follow(Class relationshipType, String endpoint) {
+        List<Edge> more = new ArrayList<>(edges);
+        more.add(new Edge(relationshipType, endpoint));
+        return new GraphSpec(depth, more);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public List<Edge> getEdges() {
+        return edges;
+    }
+}
@@ -0,0 +1,231 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Reads composite values in Postgres' binary format, straight from the bytes the driver received.
+ * <p>
+ * next() moves to the next field, and the read methods decode it in place; only text allocates, for the String itself.
+ * A nested composite is read with the same reader: its fields follow one another in the outer field's bytes,
+ * so when the generated codec has read the last of them the reader is at the next outer field.
+ * <p>
+ * The field type OIDs are not checked. The types were checked against the composite's attributes when binary transfer was turned on,
+ * see PgTypes. A reader is not thread-safe.
+ */
+public final class PgBinaryReader {
+
+    private static final BigInteger TEN_THOUSAND = BigInteger.valueOf(10_000);
+
+    private final byte[] bytes;
+    private int position;
+
+    // The current field.
+    private int start;
+    private int length;
+
+    public PgBinaryReader(byte[] bytes, int offset) {
+        this.bytes = bytes;
+        this.position = offset;
+    }
+
+    /** Reads the field count of a composite, at the top level or of the nested composite in the current field, and checks it. */
+    public void beginComposite(int expectedFields, String typeName) {
+        int fields = getInt(position);
+        position += 4;
+        if (fields != expectedFields) {
+            throw new IllegalArgumentException("Expected " + expectedFields + " fields for " + typeName + " but got " + fields);
+        }
+    }
+
+    /** Moves to the next field. The reader is positioned on its value. */
+    public PgBinaryReader next() {
+        // The OID comes first and is skipped.
+        length = getInt(position + 4);
+        start = position + 8;
+        position = length < 0 ? start : start + length;
+        return this;
+    }
+
+    /**
+     * Moves to the start of the nested composite in the current field, so that it can be read with the same reader.
+     * Used by the generated codecs just before they decode a nested record.
+     */
+    public PgBinaryReader enter() {
+        position = start;
+        return this;
+    }
+
+    public boolean isNull() {
+        return length < 0;
+    }
+
+    /** Used for fields that map to primitive record components, which cannot hold a NULL. */
+    public PgBinaryReader requireNonNull(String component) {
+        if (length < 0) {
+            throw new IllegalArgumentException("NULL value for primitive record component " + component);
+        }
+        return this;
+    }
+
+    public String readString() {
+        return new String(bytes, start, length, StandardCharsets.UTF_8);
+    }
+
+    public int readInt() {
+        checkLength(4);
+        return getInt(start);
+    }
+
+    public short readShort() {
+        checkLength(2);
+        return (short) ((bytes[start] & 0xFF) << 8 | bytes[start + 1] & 0xFF);
+    }
+
+    public long readLong() {
+        checkLength(8);
+        return getLong(start);
+    }
+
+    public double readDouble() {
+        checkLength(8);
+        return Double.longBitsToDouble(getLong(start));
+    }
+
+    public float readFloat() {
+        checkLength(4);
+        return Float.intBitsToFloat(getInt(start));
+    }
+
+    public boolean readBoolean() {
+        checkLength(1);
+        return bytes[start] != 0;
+    }
+
+    public UUID readUUID() {
+        checkLength(16);
+        return new UUID(getLong(start), getLong(start + 8));
+    }
+
+    // Postgres' infinite dates and timestamps are read as the largest and smallest Java values, as the JDBC driver does.
+
+    public LocalDate readLocalDate() {
+        checkLength(4);
+        int days = getInt(start);
+        if (days == Integer.MAX_VALUE) {
+            return LocalDate.MAX;
+        } else if (days == Integer.MIN_VALUE) {
+            return LocalDate.MIN;
+        }
+        return LocalDate.ofEpochDay(days + PgBinaryWriter.POSTGRES_EPOCH_DAYS);
+    }
+
+    public LocalTime readLocalTime() {
+        checkLength(8);
+        return LocalTime.ofNanoOfDay(getLong(start) * 1000L);
+    }
+
+    public LocalDateTime readLocalDateTime() {
+        checkLength(8);
+        long micros = getLong(start);
+        if (micros == Long.MAX_VALUE) {
+            return LocalDateTime.MAX;
+        } else if (micros == Long.MIN_VALUE) {
+            return LocalDateTime.MIN;
+        }
+        return LocalDateTime.ofEpochSecond(seconds(micros), nanos(micros), ZoneOffset.UTC);
+    }
+
+    public OffsetDateTime readOffsetDateTime() {
+        checkLength(8);
+        long micros = getLong(start);
+        if (micros == Long.MAX_VALUE) {
+            return OffsetDateTime.MAX;
+        } else if (micros == Long.MIN_VALUE) {
+            return OffsetDateTime.MIN;
+        }
+        return readInstant().atOffset(ZoneOffset.UTC);
+    }
+
+    public Instant readInstant() {
+        checkLength(8);
+        long micros = getLong(start);
+        if (micros == Long.MAX_VALUE) {
+            return Instant.MAX;
+        } else if (micros == Long.MIN_VALUE) {
+            return Instant.MIN;
+        }
+        return Instant.ofEpochSecond(seconds(micros), nanos(micros));
+    }
+
+    // The inverse of PgBinaryWriter.encodeNumeric(): base-10000 digits, with the weight of the first one, a sign and the display scale.
+    public BigDecimal readBigDecimal() {
+        int ndigits = getShort(start);
+        int weight = getShort(start + 2);
+        int sign = getShort(start + 4) & 0xFFFF;
+        int scale = getShort(start + 6);
+        if (sign == 0xC000) {
+            throw new ArithmeticException("numeric NaN cannot be read as a BigDecimal");
+        }
+
+        // Up to four digits fit in a long, which covers most values without a BigInteger.
+        BigInteger unscaled;
+        if (ndigits <= 4) {
+            long value = 0;
+            for (int i = 0; i < ndigits; i++) {
+                value = value * 10_000 + getShort(start + 8 + i * 2);
+            }
+            unscaled = BigInteger.valueOf(value);
+        } else {
+            unscaled = BigInteger.ZERO;
+            for (int i = 0; i < ndigits; i++) {
+                unscaled = unscaled.multiply(TEN_THOUSAND).add(BigInteger.valueOf(getShort(start + 8 + i * 2)));
+            }
+        }
+        if (sign == 0x4000) {
+            unscaled = unscaled.negate();
+        }
+
+        // The last digit is worth 10000^(weight - ndigits + 1).
+        BigDecimal value = new BigDecimal(unscaled, -4 * (weight - ndigits + 1));
+        return value.setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    private static long seconds(long micros) {
+        return Math.floorDiv(micros, 1_000_000L) + PgBinaryWriter.POSTGRES_EPOCH_SECONDS;
+    }
+
+    private static int nanos(long micros) {
+        return (int) Math.floorMod(micros, 1_000_000L) * 1000;
+    }
+
+    private void checkLength(int expected) {
+        if (length != expected) {
+            throw new IllegalArgumentException("Expected a " + expected + "-byte field but got " + length + " bytes");
+        }
+    }
+
+    private short getShort(int at) {
+        return (short) ((bytes[at] & 0xFF) << 8 | bytes[at + 1] & 0xFF);
+    }
+
+    private int getInt(int at) {
+        return (bytes[at] & 0xFF) << 24 | (bytes[at + 1] & 0xFF) << 16 | (bytes[at + 2] & 0xFF) << 8 | bytes[at + 3] & 0xFF;
+    }
+
+    private long getLong(int at) {
+        return (long) getInt(at) << 32 | getInt(at + 4) & 0xFFFFFFFFL;
+    }
+}
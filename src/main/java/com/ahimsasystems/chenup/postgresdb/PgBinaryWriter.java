@@ -0,0 +1,326 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Writes composite values in Postgres' binary format (what record_send produces and record_recv reads) into a reusable buffer.
+ * <p>
+ * A composite is its field count followed by one entry per field: the type OID of the field, its length, and the value, or a length of -1 for NULL.
+ * The OIDs must be the exact types of the composite's attributes, which the generated codecs get from attributeOids().
+ * A nested composite is written in place between beginField() and endField(), and its length is filled in afterwards.
+ * <p>
+ * A writer is not thread-safe. local() gives each thread one of its own.
+ */
+public final class PgBinaryWriter {
+
+    // Postgres counts dates and timestamps from 2000-01-01 rather than 1970-01-01.
+    static final long POSTGRES_EPOCH_DAYS = 10957L;
+    static final long POSTGRES_EPOCH_SECONDS = POSTGRES_EPOCH_DAYS * 86400L;
+
+    // Buffers that grew past this for an unusually large value are not kept.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<PgBinaryWriter> LOCAL = ThreadLocal.withInitial(PgBinaryWriter::new);
+
+    private byte[] buffer = new byte[256];
+    private int position;
+    // Where the length of each nested composite that is still open goes.
+    private int[] openFields = new int[4];
+    private int depth;
+    private PgTypes types;
+
+    /** The writer of the current thread. Only use it for values that are finished before anything else on the thread calls local(). */
+    public static PgBinaryWriter local() {
+        return LOCAL.get();
+    }
+
+    /** Starts a new value, discarding anything written before. The types give the attribute OIDs of the composites written. */
+    public PgBinaryWriter begin(PgTypes types) {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[256];
+        }
+        this.types = types;
+        position = 0;
+        depth = 0;
+        return this;
+    }
+
+    /** The type OIDs of the attributes of a composite type, in attribute order. */
+    public int[] attributeOids(String typeName) {
+        return types.attributeOids(typeName);
+    }
+
+    /** Returns a copy of what has been written. */
+    public byte[] toByteArray() {
+        checkEnded();
+        return Arrays.copyOf(buffer, position);
+    }
+
+    // For PgCopyBinaryWriter, which copies what has been written straight into its own buffer, with no copy in between.
+    byte[] buffer() {
+        checkEnded();
+        return buffer;
+    }
+
+    int size() {
+        return position;
+    }
+
+    private void checkEnded() {
+        if (depth != 0) {
+            throw new IllegalStateException("Nested composite not ended");
+        }
+    }
+
+    /** Starts a composite: at the top level, or inside a field begun with beginField(). */
+    public PgBinaryWriter writeFieldCount(int count) {
+        putInt(count);
+        return this;
+    }
+
+    /** Starts a field holding a nested composite. Its field count and fields are written next, followed by endField(). */
+    public PgBinaryWriter beginField(int oid) {
+        putInt(oid);
+        if (depth == openFields.length) {
+            openFields = Arrays.copyOf(openFields, depth * 2);
+        }
+        openFields[depth++] = position;
+        putInt(0); // patched by endField
+        return this;
+    }
+
+    public PgBinaryWriter endField() {
+        if (depth == 0) {
+            throw new IllegalStateException("No nested composite to end");
+        }
+        int lengthPosition = openFields[--depth];
+        int length = position - lengthPosition - 4;
+        buffer[lengthPosition] = (byte) (length >>> 24);
+        buffer[lengthPosition + 1] = (byte) (length >>> 16);
+        buffer[lengthPosition + 2] = (byte) (length >>> 8);
+        buffer[lengthPosition + 3] = (byte) length;
+        return this;
+    }
+
+    public PgBinaryWriter writeNull(int oid) {
+        putInt(oid);
+        putInt(-1);
+        return this;
+    }
+
+    /** Text, varchar and char all take the UTF-8 bytes of the string. */
+    public PgBinaryWriter writeString(int oid, CharSequence value) {
+        putInt(oid);
+        int lengthPosition = position;
+        putInt(0);
+        putUtf8(value);
+        int length = position - lengthPosition - 4;
+        buffer[lengthPosition] = (byte) (length >>> 24);
+        buffer[lengthPosition + 1] = (byte) (length >>> 16);
+        buffer[lengthPosition + 2] = (byte) (length >>> 8);
+        buffer[lengthPosition + 3] = (byte) length;
+        return this;
+    }
+
+    public PgBinaryWriter writeInt(int oid, int value) {
+        header(oid, 4);
+        putInt(value);
+        return this;
+    }
+
+    public PgBinaryWriter writeShort(int oid, short value) {
+        header(oid, 2);
+        putShort(value);
+        return this;
+    }
+
+    public PgBinaryWriter writeLong(int oid, long value) {
+        header(oid, 8);
+        putLong(value);
+        return this;
+    }
+
+    public PgBinaryWriter writeDouble(int oid, double value) {
+        header(oid, 8);
+        putLong(Double.doubleToLongBits(value));
+        return this;
+    }
+
+    public PgBinaryWriter writeFloat(int oid, float value) {
+        header(oid, 4);
+        putInt(Float.floatToIntBits(value));
+        return this;
+    }
+
+    public PgBinaryWriter writeBoolean(int oid, boolean value) {
+        header(oid, 1);
+        ensureCapacity(1);
+        buffer[position++] = (byte) (value ? 1 : 0);
+        return this;
+    }
+
+    public PgBinaryWriter writeBigDecimal(int oid, BigDecimal value) {
+        short[] numeric = encodeNumeric(value);
+        header(oid, numeric.length * 2);
+        for (short s : numeric) {
+            putShort(s);
+        }
+        return this;
+    }
+
+    public PgBinaryWriter writeUUID(int oid, UUID value) {
+        header(oid, 16);
+        putLong(value.getMostSignificantBits());
+        putLong(value.getLeastSignificantBits());
+        return this;
+    }
+
+    public PgBinaryWriter writeLocalDate(int oid, LocalDate value) {
+        header(oid, 4);
+        putInt((int) (value.toEpochDay() - POSTGRES_EPOCH_DAYS));
+        return this;
+    }
+
+    public PgBinaryWriter writeLocalTime(int oid, LocalTime value) {
+        header(oid, 8);
+        putLong(value.toNanoOfDay() / 1000L);
+        return this;
+    }
+
+    public PgBinaryWriter writeLocalDateTime(int oid, LocalDateTime value) {
+        header(oid, 8);
+        putLong(micros(value.toEpochSecond(ZoneOffset.UTC), value.getNano()));
+        return this;
+    }
+
+    public PgBinaryWriter writeOffsetDateTime(int oid, OffsetDateTime value) {
+        header(oid, 8);
+        putLong(micros(value.toEpochSecond(), value.getNano()));
+        return this;
+    }
+
+    public PgBinaryWriter writeInstant(int oid, Instant value) {
+        header(oid, 8);
+        putLong(micros(value.getEpochSecond(), value.getNano()));
+        return this;
+    }
+
+    static long micros(long epochSecond, int nano) {
+        return (epochSecond - POSTGRES_EPOCH_SECONDS) * 1_000_000L + nano / 1000;
+    }
+
+    /**
+     * numeric is sent as base-10000 digits: ndigits, weight of the first digit, sign, display scale, then the digits.
+     * Returns all of these in order, ready to be written as 16-bit values.
+     */
+    static short[] encodeNumeric(BigDecimal value) {
+        BigDecimal abs = value.abs();
+        if (abs.scale() < 0) {
+            abs = abs.setScale(0);
+        }
+        int scale = abs.scale();
+        String plain = abs.toPlainString();
+        int point = plain.indexOf('.');
+        String integerPart = point < 0 ? plain : plain.substring(0, point);
+        String fractionPart = point < 0 ? "" : plain.substring(point + 1);
+
+        int integerGroups = (integerPart.length() + 3) / 4;
+        int fractionGroups = (fractionPart.length() + 3) / 4;
+        String digits = "0".repeat(integerGroups * 4 - integerPart.length()) + integerPart
+                + fractionPart + "0".repeat(fractionGroups * 4 - fractionPart.length());
+
+        short[] groups = new short[integerGroups + fractionGroups];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = Short.parseShort(digits.substring(i * 4, i * 4 + 4));
+        }
+
+        int first = 0;
+        int weight = integerGroups - 1;
+        while (first < groups.length && groups[first] == 0) {
+            first++;
+            weight--;
+        }
+        int last = groups.length;
+        while (last > first && groups[last - 1] == 0) {
+            last--;
+        }
+
+        int ndigits = last - first;
+        short[] numeric = new short[4 + ndigits];
+        numeric[0] = (short) ndigits;
+        numeric[1] = (short) (ndigits == 0 ? 0 : weight);
+        numeric[2] = (short) (value.signum() < 0 ? 0x4000 : 0x0000);
+        numeric[3] = (short) scale;
+        System.arraycopy(groups, first, numeric, 4, ndigits);
+        return numeric;
+    }
+
+    private void header(int oid, int length) {
+        putInt(oid);
+        putInt(length);
+    }
+
+    private void putUtf8(CharSequence value) {
+        int length = value.length();
+        // No char takes more than three bytes; a surrogate pair takes four for two chars.
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate cannot be encoded; String.getBytes() writes a question mark too.
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private void putShort(short value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+}
@@ -0,0 +1,65 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Support for the generated composite codecs, which convert Java records to and from the text form of Postgres composite values.
+ * The codecs are generated per record type by the annotation processor, so all the per-field work is plain typed code
+ * calling PgCompositeReader and PgCompositeWriter; this class only has the conversions Java does not do directly.
+ */
+public final class PgComposite {
+
+    // Postgres writes timestamps with a space instead of a T, and offsets as +HH, +HH:MM or +HH:MM:SS.
+    private static final DateTimeFormatter TIMESTAMP = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .appendLiteral(' ')
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .toFormatter();
+
+    private static final DateTimeFormatter TIMESTAMP_WITH_OFFSET = new DateTimeFormatterBuilder()
+            .append(TIMESTAMP)
+            .appendOffset("+HH:mm:ss", "+00")
+            .toFormatter();
+
+    private PgComposite() {
+    }
+
+    /** Postgres writes booleans as t and f. */
+    public static boolean parseBoolean(CharSequence text) {
+        if (text.length() == 1) {
+            return text.charAt(0) == 't';
+        }
+        return text.toString().equalsIgnoreCase("true");
+    }
+
+    // The ISO form, with a T, is also accepted, since that is what PgCompositeWriter writes.
+
+    public static LocalDateTime toLocalDateTime(CharSequence text) {
+        return isIso(text) ? LocalDateTime.parse(text) : LocalDateTime.parse(text, TIMESTAMP);
+    }
+
+    public static OffsetDateTime toOffsetDateTime(CharSequence text) {
+        return isIso(text) ? OffsetDateTime.parse(text) : OffsetDateTime.parse(text, TIMESTAMP_WITH_OFFSET);
+    }
+
+    public static Instant toInstant(CharSequence text) {
+        return toOffsetDateTime(text).toInstant();
+    }
+
+    private static boolean isIso(CharSequence text) {
+        // The T, if any, follows the date, which is at least 10 characters long.
+        for (int i = 10; i < text.length(); i++) {
+            if (text.charAt(i) == 'T') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
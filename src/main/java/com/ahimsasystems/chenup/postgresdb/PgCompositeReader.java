@@ -0,0 +1,251 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Reads the fields of a Postgres composite literal such as {@code (42,"a ""quoted"" text",,t)} in a single pass.
+ * <p>
+ * The reader does not split the literal into strings. next() finds where the next field starts and ends in the source,
+ * and the read methods convert that range straight to the typed value. Numbers, booleans, UUIDs and dates are parsed in place;
+ * the other date and time types are parsed from a view of the range, and readString() creates only the String that is the value.
+ * A field is only copied when it contains escapes, which is the case for nested composites and for text with quotes or backslashes in it.
+ * <p>
+ * The rules are those of Postgres' record input: an empty field is NULL, {@code ""} is the empty string,
+ * inside double quotes {@code ""} and {@code \"} both stand for a quote, and a backslash escapes the next character anywhere.
+ * <p>
+ * The generated composite codecs use this class; it can also be used directly. A reader is not thread-safe.
+ */
+public final class PgCompositeReader {
+
+    private final CharSequence text;
+    // Index of the closing parenthesis.
+    private final int limit;
+    // Where the next field starts.
+    private int position = 1;
+    private boolean done;
+
+    // The current field. If plain, start and end delimit its value; otherwise they delimit the raw field, quotes and escapes included.
+    private int start;
+    private int end;
+    private boolean isNull;
+    private boolean plain;
+    private StringBuilder scratch;
+
+    public PgCompositeReader(CharSequence text) {
+        if (text == null || text.length() < 2 || text.charAt(0) != '(' || text.charAt(text.length() - 1) != ')') {
+            throw new IllegalArgumentException("Invalid PostgreSQL composite format: " + text);
+        }
+        this.text = text;
+        this.limit = text.length() - 1;
+    }
+
+    /** True if there is another field to read. A composite always has at least one field; {@code ()} is a single NULL. */
+    public boolean hasNext() {
+        return !done;
+    }
+
+    /** Moves to the next field. */
+    public PgCompositeReader next() {
+        if (done) {
+            throw new IllegalArgumentException("Too few fields in composite value: " + text);
+        }
+
+        int i = position;
+        boolean inQuotes = false;
+        boolean escaped = false;
+        int quotes = 0;
+        while (i < limit) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                escaped = true;
+                i += 2;
+            } else if (c == '"') {
+                if (inQuotes && i + 1 < limit && text.charAt(i + 1) == '"') {
+                    escaped = true;
+                    i += 2;
+                } else {
+                    inQuotes = !inQuotes;
+                    quotes++;
+                    i++;
+                }
+            } else if (c == ',' && !inQuotes) {
+                break;
+            } else {
+                i++;
+            }
+        }
+        if (inQuotes || i > limit) {
+            throw new IllegalArgumentException("Unterminated field in composite value: " + text);
+        }
+
+        isNull = i == position;
+        if (!escaped && quotes == 0) {
+            start = position;
+            end = i;
+            plain = true;
+        } else if (!escaped && quotes == 2 && text.charAt(position) == '"' && text.charAt(i - 1) == '"') {
+            start = position + 1;
+            end = i - 1;
+            plain = true;
+        } else {
+            start = position;
+            end = i;
+            plain = false;
+        }
+
+        if (i == limit) {
+            done = true;
+        } else {
+            position = i + 1;
+        }
+        return this;
+    }
+
+    /** Checks that every field has been read. */
+    public void end() {
+        if (!done) {
+            throw new IllegalArgumentException("Too many fields in composite value: " + text);
+        }
+    }
+
+    public boolean isNull() {
+        return isNull;
+    }
+
+    /** Used for fields that map to primitive record components, which cannot hold a NULL. */
+    public PgCompositeReader requireNonNull(String component) {
+        if (isNull) {
+            throw new IllegalArgumentException("NULL value for primitive record component " + component);
+        }
+        return this;
+    }
+
+    /**
+     * The value of the current field, without copying it if it has no escapes.
+     * The result is only valid as long as the source text is not changed.
+     */
+    public CharSequence field() {
+        return plain ? CharBuffer.wrap(text, start, end) : unescape();
+    }
+
+    public String readString() {
+        return plain ? text.subSequence(start, end).toString() : unescape();
+    }
+
+    public int readInt() {
+        return plain ? Integer.parseInt(text, start, end, 10) : Integer.parseInt(unescape());
+    }
+
+    public long readLong() {
+        return plain ? Long.parseLong(text, start, end, 10) : Long.parseLong(unescape());
+    }
+
+    public short readShort() {
+        int value = readInt();
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range for a short: " + value);
+        }
+        return (short) value;
+    }
+
+    // Java can only parse floating point numbers from a String, so these copy the field.
+    public double readDouble() {
+        return Double.parseDouble(readString());
+    }
+
+    public float readFloat() {
+        return Float.parseFloat(readString());
+    }
+
+    public BigDecimal readBigDecimal() {
+        return new BigDecimal(readString());
+    }
+
+    public boolean readBoolean() {
+        return PgComposite.parseBoolean(field());
+    }
+
+    public UUID readUUID() {
+        if (!plain || end - start != 36) {
+            return UUID.fromString(readString());
+        }
+        long msb = hex(start, 8) << 32 | hex(start + 9, 4) << 16 | hex(start + 14, 4);
+        long lsb = hex(start + 19, 4) << 48 | hex(start + 24, 12);
+        return new UUID(msb, lsb);
+    }
+
+    public LocalDate readLocalDate() {
+        // The common case, yyyy-mm-dd, is read in place. Anything else, such as a year past 9999, goes through the ISO parser.
+        if (plain && end - start == 10 && text.charAt(start + 4) == '-' && text.charAt(start + 7) == '-') {
+            return LocalDate.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2));
+        }
+        return LocalDate.parse(field());
+    }
+
+    public LocalTime readLocalTime() {
+        return LocalTime.parse(field());
+    }
+
+    public LocalDateTime readLocalDateTime() {
+        return PgComposite.toLocalDateTime(field());
+    }
+
+    public OffsetDateTime readOffsetDateTime() {
+        return PgComposite.toOffsetDateTime(field());
+    }
+
+    public Instant readInstant() {
+        return PgComposite.toInstant(field());
+    }
+
+    private long hex(int from, int count) {
+        long value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid UUID: " + text.subSequence(start, end));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private int digits(int from, int count) {
+        return Integer.parseInt(text, from, from + count, 10);
+    }
+
+    // Removes the quotes and escapes from the current field. The scratch buffer is reused from field to field.
+    private String unescape() {
+        if (scratch == null) {
+            scratch = new StringBuilder(end - start);
+        }
+        scratch.setLength(0);
+        boolean inQuotes = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                scratch.append(text.charAt(++i));
+            } else if (c == '"') {
+                if (inQuotes && i + 1 < end && text.charAt(i + 1) == '"') {
+                    scratch.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else {
+                scratch.append(c);
+            }
+        }
+        return scratch.toString();
+    }
+}
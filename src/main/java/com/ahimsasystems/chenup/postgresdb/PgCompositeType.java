@@ -0,0 +1,45 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.util.List;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Describes a composite type (UDT) that a generated codec converts: its name, the PGobject class the driver should return for it,
+ * and the kind of each component, such as Int or String, with the nested type for components that are records.
+ * The generated mappers hand these to PgTypes, which uses them to check the database's attribute types before turning on binary transfer.
+ */
+public final class PgCompositeType {
+    private final String name;
+    private final Class<? extends PgCompositeValue<?>> valueClass;
+    private final List<String> kinds;
+    private final List<PgCompositeType> nestedTypes;
+
+    /**
+     * @param kinds       the component kinds, named as in the PgBinaryReader and PgBinaryWriter methods, or Composite for a nested record
+     * @param nestedTypes the nested types of the Composite components, in order
+     */
+    public PgCompositeType(String name, Class<? extends PgCompositeValue<?>> valueClass, List<String> kinds, List<PgCompositeType> nestedTypes) {
+        this.name = name;
+        this.valueClass = valueClass;
+        this.kinds = List.copyOf(kinds);
+        this.nestedTypes = List.copyOf(nestedTypes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<? extends PgCompositeValue<?>> getValueClass() {
+        return valueClass;
+    }
+
+    public List<String> getKinds() {
+        return kinds;
+    }
+
+    public List<PgCompositeType> getNestedTypes() {
+        return nestedTypes;
+    }
+}
@@ -0,0 +1,98 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.SQLException;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A composite value as the JDBC driver sees it. Each generated codec has a subclass, which PgTypes registers with the driver for its type.
+ * <p>
+ * When binary transfer is on for the type, the driver hands over the received bytes with setByteValue() and asks for the bytes to send
+ * with lengthInBytes() and toBytes(). Otherwise it uses the text form through setValue() and getValue(), as for a plain PGobject.
+ * Either way the value is decoded into the record once, and the record is what the mapper takes out.
+ */
+public abstract class PgCompositeValue<R extends Record> extends PGobject implements PGBinaryObject {
+    private R record;
+    private PgTypes types;
+    private byte[] bytes;
+
+    /** Used by the driver, which then sets the type and the value. */
+    protected PgCompositeValue() {
+    }
+
+    /** Used by the mappers to send a record. The types give the attribute OIDs for the binary form. */
+    protected PgCompositeValue(String typeName, R record, PgTypes types) {
+        this.type = typeName;
+        this.record = record;
+        this.types = types;
+    }
+
+    public R getRecord() {
+        return record;
+    }
+
+    @Override
+    public void setValue(String text) throws SQLException {
+        try {
+            record = text == null ? null : decode(text);
+        } catch (RuntimeException e) {
+            throw new SQLException("Invalid " + type + " value: " + text, e);
+        }
+        value = text;
+        bytes = null;
+    }
+
+    @Override
+    public String getValue() {
+        if (value == null && record != null) {
+            value = encode(record);
+        }
+        return value;
+    }
+
+    @Override
+    public void setByteValue(byte[] received, int offset) throws SQLException {
+        try {
+            record = decodeBinary(new PgBinaryReader(received, offset));
+        } catch (RuntimeException e) {
+            throw new SQLException("Invalid binary " + type + " value", e);
+        }
+        value = null;
+        bytes = null;
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return binary().length;
+    }
+
+    @Override
+    public void toBytes(byte[] target, int offset) {
+        byte[] encoded = binary();
+        System.arraycopy(encoded, 0, target, offset, encoded.length);
+    }
+
+    // The driver asks for the length and then for the bytes, so the binary form is encoded once and kept.
+    private byte[] binary() {
+        if (bytes == null && record == null) {
+            bytes = new byte[0];
+        } else if (bytes == null) {
+            PgBinaryWriter writer = PgBinaryWriter.local().begin(types);
+            encodeBinary(record, writer);
+            bytes = writer.toByteArray();
+        }
+        return bytes;
+    }
+
+    protected abstract R decode(String text);
+
+    protected abstract R decodeBinary(PgBinaryReader in);
+
+    protected abstract String encode(R record);
+
+    protected abstract void encodeBinary(R record, PgBinaryWriter out);
+}
@@ -0,0 +1,241 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Writes a Postgres composite literal field by field into a buffer that is reused from one value to the next.
+ * <pre>
+ *     String literal = writer.begin().writeInt(42).writeString("a, b").writeNull().finish();   // (42,"a, b",)
+ * </pre>
+ * Values are appended straight to the buffer, so nothing but the finished literal is allocated.
+ * The output follows Postgres' own record output, which its record input reads back unchanged:
+ * NULL is an empty field, and text that is empty or contains a quote, backslash, comma, parenthesis or whitespace is double-quoted,
+ * with quotes and backslashes doubled inside.
+ * <p>
+ * A nested composite is written in place between beginComposite() and endComposite(). Each level of nesting is one more level of quoting,
+ * so a quote inside it is written 2, 4, 8... times over, exactly as if the inner literal had been built on its own and then quoted.
+ * <p>
+ * A writer is not thread-safe. local() gives each thread one of its own.
+ */
+public final class PgCompositeWriter {
+
+    // Buffers that grew past this for an unusually large value are not kept.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<PgCompositeWriter> LOCAL = ThreadLocal.withInitial(PgCompositeWriter::new);
+
+    private StringBuilder buffer = new StringBuilder(128);
+    // Number of quoted composites the current field is nested in.
+    private int depth;
+    private boolean separatorNeeded;
+
+    /** The writer of the current thread. Only use it for values that are finished before anything else on the thread calls local(). */
+    public static PgCompositeWriter local() {
+        return LOCAL.get();
+    }
+
+    /** Starts a new composite literal, discarding anything written before. */
+    public PgCompositeWriter begin() {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(128);
+        }
+        buffer.setLength(0);
+        buffer.append('(');
+        depth = 0;
+        separatorNeeded = false;
+        return this;
+    }
+
+    /** Ends the literal and returns it. */
+    public String finish() {
+        if (depth != 0) {
+            throw new IllegalStateException("Nested composite not ended");
+        }
+        buffer.append(')');
+        return buffer.toString();
+    }
+
+    /** Starts a field that holds a composite. Its fields are written next, followed by endComposite(). */
+    public PgCompositeWriter beginComposite() {
+        separator();
+        quote();
+        depth++;
+        buffer.append('(');
+        separatorNeeded = false;
+        return this;
+    }
+
+    public PgCompositeWriter endComposite() {
+        if (depth == 0) {
+            throw new IllegalStateException("No nested composite to end");
+        }
+        buffer.append(')');
+        depth--;
+        quote();
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeNull() {
+        separator();
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeString(CharSequence value) {
+        separator();
+        if (!needsQuoting(value)) {
+            buffer.append(value);
+        } else {
+            quote();
+            // Inside the quotes a quote or backslash is doubled, on top of the doubling for the levels around it.
+            int copies = 2 << depth;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    for (int j = 0; j < copies; j++) {
+                        buffer.append(c);
+                    }
+                } else {
+                    buffer.append(c);
+                }
+            }
+            quote();
+        }
+        separatorNeeded = true;
+        return this;
+    }
+
+    // Numbers, booleans, UUIDs and ISO dates never contain characters that need quoting, so they are appended as they are.
+
+    public PgCompositeWriter writeInt(int value) {
+        separator();
+        buffer.append(value);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeShort(short value) {
+        return writeInt(value);
+    }
+
+    public PgCompositeWriter writeLong(long value) {
+        separator();
+        buffer.append(value);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeDouble(double value) {
+        separator();
+        buffer.append(value);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeFloat(float value) {
+        separator();
+        buffer.append(value);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeBoolean(boolean value) {
+        separator();
+        buffer.append(value ? 't' : 'f');
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeBigDecimal(BigDecimal value) {
+        separator();
+        buffer.append(value);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeUUID(UUID value) {
+        separator();
+        long msb = value.getMostSignificantBits();
+        long lsb = value.getLeastSignificantBits();
+        hex(msb >>> 32, 8).append('-');
+        hex(msb >>> 16, 4).append('-');
+        hex(msb, 4).append('-');
+        hex(lsb >>> 48, 4).append('-');
+        hex(lsb, 12);
+        separatorNeeded = true;
+        return this;
+    }
+
+    public PgCompositeWriter writeLocalDate(LocalDate value) {
+        return writeTemporal(DateTimeFormatter.ISO_LOCAL_DATE, value);
+    }
+
+    public PgCompositeWriter writeLocalTime(LocalTime value) {
+        return writeTemporal(DateTimeFormatter.ISO_LOCAL_TIME, value);
+    }
+
+    public PgCompositeWriter writeLocalDateTime(LocalDateTime value) {
+        return writeTemporal(DateTimeFormatter.ISO_LOCAL_DATE_TIME, value);
+    }
+
+    public PgCompositeWriter writeOffsetDateTime(OffsetDateTime value) {
+        return writeTemporal(DateTimeFormatter.ISO_OFFSET_DATE_TIME, value);
+    }
+
+    public PgCompositeWriter writeInstant(Instant value) {
+        return writeTemporal(DateTimeFormatter.ISO_INSTANT, value);
+    }
+
+    private PgCompositeWriter writeTemporal(DateTimeFormatter formatter, TemporalAccessor value) {
+        separator();
+        formatter.formatTo(value, buffer);
+        separatorNeeded = true;
+        return this;
+    }
+
+    static boolean needsQuoting(CharSequence value) {
+        if (value.length() == 0) {
+            // Unquoted, an empty field would be read back as NULL.
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == ',' || c == '(' || c == ')' || Character.isWhitespace(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void separator() {
+        if (separatorNeeded) {
+            buffer.append(',');
+        }
+    }
+
+    // The quotes around a field at this depth, which are themselves doubled once for every composite around them.
+    private void quote() {
+        for (int i = 0, copies = 1 << depth; i < copies; i++) {
+            buffer.append('"');
+        }
+    }
+
+    private StringBuilder hex(long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.append(Character.forDigit((int) (value >>> shift) & 0xF, 16));
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,201 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import org.postgresql.copy.CopyIn;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Streams rows to a COPY ... FROM STDIN (FORMAT BINARY) operation.
+ * <p>
+ * Rows are encoded into a reusable buffer that is handed to the driver whenever it grows past a threshold,
+ * so arbitrarily large loads never hold more than one buffer's worth of encoded data.
+ * The generated mappers write one row per object with startRow() followed by one write call per column.
+ * <p>
+ * Composite values (Java records mapped to UDTs) are encoded by their generated codecs with a PgBinaryWriter and written with writeBinary(),
+ * so they take the attribute types of the UDT from PgTypes, and nested records are written like any other attribute.
+ */
+public final class PgCopyBinaryWriter implements AutoCloseable {
+
+    private static final byte[] HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    // Postgres counts dates and timestamps from 2000-01-01 rather than 1970-01-01.
+    private static final long POSTGRES_EPOCH_DAYS = 10957L;
+    private static final long POSTGRES_EPOCH_SECONDS = POSTGRES_EPOCH_DAYS * 86400L;
+
+    private final CopyIn copyIn;
+    private byte[] buffer = new byte[FLUSH_THRESHOLD + 1024];
+    private int position;
+
+    public PgCopyBinaryWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+        putBytes(HEADER);
+        putInt(0); // flags
+        putInt(0); // header extension length
+    }
+
+    public void startRow(int fieldCount) throws SQLException {
+        if (position >= FLUSH_THRESHOLD) {
+            flushBuffer();
+        }
+        putShort((short) fieldCount);
+    }
+
+    public void writeNull() {
+        putInt(-1);
+    }
+
+    public void writeUuid(UUID value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        putInt(16);
+        putLong(value.getMostSignificantBits());
+        putLong(value.getLeastSignificantBits());
+    }
+
+    /** Writes a column value whose SQL type is the natural mapping of its Java type. Composites go through writeBinary() instead. */
+    public void writeValue(Object value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        int lengthPosition = beginField();
+        putRaw(value);
+        endField(lengthPosition);
+    }
+
+    /**
+     * Writes a value encoded with a PgBinaryWriter, which is how the generated mappers write composites: the codec of the record encodes it
+     * with encodeBinary(), taking the attribute types from PgTypes.
+     */
+    public void writeBinary(PgBinaryWriter encoded) {
+        int length = encoded.size();
+        putInt(length);
+        ensureCapacity(length);
+        System.arraycopy(encoded.buffer(), 0, buffer, position, length);
+        position += length;
+    }
+
+    /** Writes the trailer and completes the COPY, returning the number of rows the server reports. */
+    public long finish() throws SQLException {
+        putShort((short) -1);
+        flushBuffer();
+        return copyIn.endCopy();
+    }
+
+    /** Cancels the COPY if finish() was not reached, for example because encoding a row failed. */
+    @Override
+    public void close() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    private void flushBuffer() throws SQLException {
+        if (position > 0) {
+            copyIn.writeToCopy(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private int beginField() {
+        int lengthPosition = position;
+        putInt(0); // patched by endField
+        return lengthPosition;
+    }
+
+    private void endField(int lengthPosition) {
+        int length = position - lengthPosition - 4;
+        buffer[lengthPosition] = (byte) (length >>> 24);
+        buffer[lengthPosition + 1] = (byte) (length >>> 16);
+        buffer[lengthPosition + 2] = (byte) (length >>> 8);
+        buffer[lengthPosition + 3] = (byte) length;
+    }
+
+    private void putRaw(Object value) {
+        switch (value) {
+            case String s -> putBytes(s.getBytes(StandardCharsets.UTF_8));
+            case Integer i -> putInt(i);
+            case Long l -> putLong(l);
+            case Short s -> putShort(s);
+            case Boolean b -> putByte((byte) (b ? 1 : 0));
+            case Double d -> putLong(Double.doubleToLongBits(d));
+            case Float f -> putInt(Float.floatToIntBits(f));
+            case UUID u -> {
+                putLong(u.getMostSignificantBits());
+                putLong(u.getLeastSignificantBits());
+            }
+            case LocalDate d -> putInt((int) (d.toEpochDay() - POSTGRES_EPOCH_DAYS));
+            case LocalTime t -> putLong(t.toNanoOfDay() / 1000L);
+            case LocalDateTime t -> putLong(micros(t.toEpochSecond(ZoneOffset.UTC), t.getNano()));
+            case Instant t -> putLong(micros(t.getEpochSecond(), t.getNano()));
+            case OffsetDateTime t -> putLong(micros(t.toEpochSecond(), t.getNano()));
+            case ZonedDateTime t -> putLong(micros(t.toEpochSecond(), t.getNano()));
+            case BigDecimal d -> putNumeric(d);
+            // Records are not columns of their own type here; the generated mappers encode them with their codecs, see writeBinary().
+            default -> throw new IllegalArgumentException("Type " + value.getClass().getName() + " is not supported by binary COPY");
+        }
+    }
+
+    private static long micros(long epochSecond, int nano) {
+        return (epochSecond - POSTGRES_EPOCH_SECONDS) * 1_000_000L + nano / 1000;
+    }
+
+    private void putNumeric(BigDecimal value) {
+        for (short s : PgBinaryWriter.encodeNumeric(value)) {
+            putShort(s);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private void putByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void putBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void putShort(short value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+}
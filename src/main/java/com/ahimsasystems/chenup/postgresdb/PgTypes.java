@@ -0,0 +1,225 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.QueryExecutor;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The composite types (UDTs) of the registered mappers, and what the database says about them.
+ * <p>
+ * The mappers register their composite types, with the nested ones, when they are registered with the PostgresPersistenceManager.
+ * The first PostgresContext then looks up the OID of each type and the types of its attributes, in one query, and keeps them.
+ * A type gets binary transfer if every attribute has the type its record component maps to (text, varchar or char for String, int4 for int, and so on),
+ * and nested types qualify in the same way. Other types stay on the text form, which works for any attribute types that accept the text.
+ * <p>
+ * Every PostgresContext then prepares its connection: the driver is told to return each composite type as its generated PgCompositeValue,
+ * and to send and receive the qualifying types in binary. The driver only uses binary for server-prepared statements,
+ * which it switches to after a statement has run a few times (prepareThreshold); the cached statements in PostgresContext get there quickly.
+ * <p>
+ * OIDs differ from database to database, so a manager, and with it its PgTypes, must only be used with one database.
+ */
+public final class PgTypes {
+
+    // Built-in type OIDs, which are the same in every database.
+    public static final int BOOL = 16;
+    public static final int INT8 = 20;
+    public static final int INT2 = 21;
+    public static final int INT4 = 23;
+    public static final int TEXT = 25;
+    public static final int FLOAT4 = 700;
+    public static final int FLOAT8 = 701;
+    public static final int BPCHAR = 1042;
+    public static final int VARCHAR = 1043;
+    public static final int DATE = 1082;
+    public static final int TIME = 1083;
+    public static final int TIMESTAMP = 1114;
+    public static final int TIMESTAMPTZ = 1184;
+    public static final int NUMERIC = 1700;
+    public static final int UUID = 2950;
+
+    private static final String LOOKUP_SQL = "SELECT n.name, t.oid, a.atttypid FROM unnest(?::text[]) AS n(name) "
+            + "JOIN pg_type t ON t.oid = to_regtype(n.name) "
+            + "JOIN pg_attribute a ON a.attrelid = t.typrelid AND a.attnum > 0 AND NOT a.attisdropped "
+            + "ORDER BY n.name, a.attnum";
+
+    private record Resolved(int oid, int[] attributeOids, boolean binary) {
+    }
+
+    // Replaced with an updated immutable copy on each registration, like the registries of the manager.
+    private volatile Map<String, PgCompositeType> registered = Map.of();
+    // Filled by the first context after registration.
+    private volatile Map<String, Resolved> resolved;
+    private volatile boolean binaryTransfer = true;
+
+    /** Registers composite types and the types nested in them. */
+    public synchronized void registerAll(Collection<PgCompositeType> types) {
+        Map<String, PgCompositeType> updated = new LinkedHashMap<>(registered);
+        List<PgCompositeType> pending = new ArrayList<>(types);
+        while (!pending.isEmpty()) {
+            PgCompositeType type = pending.removeLast();
+            if (type != null && updated.putIfAbsent(type.getName(), type) == null) {
+                pending.addAll(type.getNestedTypes());
+            }
+        }
+        if (updated.size() != registered.size()) {
+            registered = Collections.unmodifiableMap(updated);
+            resolved = null;
+        }
+    }
+
+    public boolean isBinaryTransfer() {
+        return binaryTransfer;
+    }
+
+    /** Turns binary transfer off, or on again, for connections prepared from now on. With it off, all composites use the text form. */
+    public void setBinaryTransfer(boolean binaryTransfer) {
+        this.binaryTransfer = binaryTransfer;
+    }
+
+    /** True if the type has been looked up and qualifies for binary transfer. */
+    public boolean isBinary(String typeName) {
+        Map<String, Resolved> current = resolved;
+        Resolved type = current != null ? current.get(typeName) : null;
+        return type != null && type.binary();
+    }
+
+    /** The OIDs of the attributes of a composite type, which the binary form gives for each field. */
+    public int[] attributeOids(String typeName) {
+        Map<String, Resolved> current = resolved;
+        Resolved type = current != null ? current.get(typeName) : null;
+        if (type == null) {
+            throw new IllegalStateException("Composite type " + typeName + " has not been looked up in the database");
+        }
+        return type.attributeOids();
+    }
+
+    /**
+     * Prepares a connection for the registered composite types. Called by PostgresContext, so it runs once per unit of work;
+     * after the first call it only updates the driver's maps. Connections that are not PostgreSQL connections are left alone.
+     */
+    public void prepare(Connection connection) {
+        Map<String, PgCompositeType> types = registered;
+        if (types.isEmpty()) {
+            return;
+        }
+        try {
+            if (!connection.isWrapperFor(BaseConnection.class)) {
+                return;
+            }
+            BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+            for (PgCompositeType type : types.values()) {
+                pgConnection.addDataType(type.getName(), type.getValueClass());
+            }
+            if (!binaryTransfer) {
+                return;
+            }
+            QueryExecutor queryExecutor = pgConnection.getQueryExecutor();
+            for (Resolved type : resolve(connection, types).values()) {
+                if (type.binary() && !queryExecutor.useBinaryForReceive(type.oid())) {
+                    queryExecutor.addBinaryReceiveOid(type.oid());
+                    queryExecutor.addBinarySendOid(type.oid());
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to prepare the connection for composite types", e);
+        }
+    }
+
+    private Map<String, Resolved> resolve(Connection connection, Map<String, PgCompositeType> types) throws SQLException {
+        Map<String, Resolved> current = resolved;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (resolved == null) {
+                resolved = lookup(connection, types);
+            }
+            return resolved;
+        }
+    }
+
+    private static Map<String, Resolved> lookup(Connection connection, Map<String, PgCompositeType> types) throws SQLException {
+        Map<String, Integer> oids = new HashMap<>();
+        Map<String, List<Integer>> attributes = new HashMap<>();
+        Array names = connection.createArrayOf("text", types.keySet().toArray());
+        try (PreparedStatement stmt = connection.prepareStatement(LOOKUP_SQL)) {
+            stmt.setArray(1, names);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    // OIDs are unsigned, and the driver keeps them in an int the same way.
+                    oids.put(name, (int) rs.getLong(2));
+                    attributes.computeIfAbsent(name, n -> new ArrayList<>()).add((int) rs.getLong(3));
+                }
+            }
+        } finally {
+            names.free();
+        }
+
+        Map<String, Resolved> result = new HashMap<>();
+        for (PgCompositeType type : types.values()) {
+            resolve(type, oids, attributes, result);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    // Resolves a type after the types nested in it, since it only qualifies for binary if they do.
+    private static void resolve(PgCompositeType type, Map<String, Integer> oids, Map<String, List<Integer>> attributes, Map<String, Resolved> result) {
+        if (result.containsKey(type.getName()) || !oids.containsKey(type.getName())) {
+            return;
+        }
+        List<Integer> attributeList = attributes.get(type.getName());
+        int[] attributeOids = attributeList.stream().mapToInt(Integer::intValue).toArray();
+        // Entered before the nested types, so a type that contains itself does not recurse forever. It does not get binary.
+        result.put(type.getName(), new Resolved(oids.get(type.getName()), attributeOids, false));
+
+        List<String> kinds = type.getKinds();
+        boolean binary = kinds.size() == attributeOids.length;
+        int nested = 0;
+        for (int i = 0; i < kinds.size(); i++) {
+            if (kinds.get(i).equals("Composite")) {
+                PgCompositeType nestedType = type.getNestedTypes().get(nested++);
+                resolve(nestedType, oids, attributes, result);
+                Resolved nestedResolved = result.get(nestedType.getName());
+                binary &= nestedResolved != null && nestedResolved.binary() && i < attributeOids.length && attributeOids[i] == nestedResolved.oid();
+            } else {
+                binary &= i < attributeOids.length && matches(kinds.get(i), attributeOids[i]);
+            }
+        }
+        result.put(type.getName(), new Resolved(oids.get(type.getName()), attributeOids, binary));
+    }
+
+    private static boolean matches(String kind, int oid) {
+        return switch (kind) {
+            case "String" -> oid == TEXT || oid == VARCHAR || oid == BPCHAR;
+            case "Int" -> oid == INT4;
+            case "Long" -> oid == INT8;
+            case "Short" -> oid == INT2;
+            case "Double" -> oid == FLOAT8;
+            case "Float" -> oid == FLOAT4;
+            case "Boolean" -> oid == BOOL;
+            case "BigDecimal" -> oid == NUMERIC;
+            case "UUID" -> oid == UUID;
+            case "LocalDate" -> oid == DATE;
+            case "LocalTime" -> oid == TIME;
+            case "LocalDateTime" -> oid == TIMESTAMP;
+            case "OffsetDateTime", "Instant" -> oid == TIMESTAMPTZ;
+            default -> false;
+        };
+    }
+}
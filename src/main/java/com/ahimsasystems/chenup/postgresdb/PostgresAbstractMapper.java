@@ -1,18 +1,36 @@
 package com.ahimsasystems.chenup.postgresdb;
 
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.EntityReference;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.MetaData;
 import com.ahimsasystems.chenup.core.PersistenceCapable;
-import com.ahimsasystems.chenup.core.PersistenceManager;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
+import com.ahimsasystems.chenup.core.exceptions.VersionConflictException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.postgresql.util.PGobject;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.RecordComponent;
-import java.sql.Connection;
+import java.sql.Array;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // © 2025 Stephen W. Strom
 // Licensed under the MIT License. See LICENSE file in the project root for details.
@@ -22,18 +40,11 @@ import java.util.UUID;
  * The `read` method fetches a record by its UUID and maps the result set to a newly created Java object.
  * Subclasses must implement the `mapFields` method for the specific type they are mapping.
  * This design follows the Template Method pattern, allowing subclasses to define specific mapping logic while reusing the common retrieval logic.
+ *
+ * Mappers are stateless: everything a call needs comes in through its arguments and the PostgresContext.
+ * A single instance per type is created at registration time and shared by all threads.
  */
 public abstract class PostgresAbstractMapper implements PostgresMapper {
-    private PostgresPersistenceManager persistenceManager; // <-- Can this just be made a PersistenceManager? Or does it need to be a PostgresPersistenceManager?
-
-
-    public PostgresPersistenceManager getPersistenceManager() {
-        return persistenceManager;
-    }
-
-    public void setPersistenceManager(PersistenceManager persistenceManager) {
-        this.persistenceManager = (PostgresPersistenceManager) persistenceManager;
-    }
 
 //    public void setConnection(@NotNull Connection connection) {
 //        this.persistenceManager.setConnection(connection);
@@ -45,139 +56,450 @@ public abstract class PostgresAbstractMapper implements PostgresMapper {
 
     public PersistenceCapable read(UUID id, PostgresContext context) {
 
-        Connection conn = context.getConnection();
-
-
-
-
         String sql = getReadSql();  // Use the method to get the SQL query
-        PostgresAbstractPersistenceCapable result;
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        AbstractPersistenceCapable result;
 
+        // Statements come from the context's cache and stay open; only the ResultSets are closed here.
+        try {
+            PreparedStatement stmt = context.prepareStatement(sql);
 
             stmt.setObject(1, id);  // Works because PostgreSQL JDBC supports UUID
 
 
             try (ResultSet rs = stmt.executeQuery()) {
 
+                if (!rs.next()) {
+                    return null;
+                }
+
                 // Has to pass a connection because getting a Relationship may require pulling in entities from the database.
-                result = (PostgresAbstractPersistenceCapable) getRecord(rs, context);  // Cast to PersistenceCapable, assuming getRecord returns a PersistenceCapable object
+                // The generated read SQL joins THING, so getRecord also fills in the deleted flag and version.
+                result = (AbstractPersistenceCapable) getRecord(rs, context);  // Cast to PersistenceCapable, assuming getRecord returns a PersistenceCapable object
 
+            }
 
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
 
+//        // TODO: should we stop here or go ahead and return the object with its metadata set including deleted?
+//        if (result.getMetaData().isDeleted()) {
+//            // If the record is marked as deleted, we should not return it
+//            throw new DeletedObjectAccessException(id);
+//        }
 
+        return result;
 
-            }
+    }
 
+    /**
+     * Reads all the objects with the given ids in a single query, using the generated getReadAllSql() with an = ANY(?) array parameter.
+     * Like read(), this always returns new instances and does not consult the PersistenceManager's identity map; the caller is expected
+     * to pass only the ids it is missing. Ids with no row are left out, and the rows come back in no particular order.
+     */
+    public List<PersistenceCapable> readAll(Collection<UUID> ids, PostgresContext context) {
+        return readWhereAny(getReadAllSql(), ids, context);
+    }
 
+    /**
+     * Reads all the objects whose reference field refers to one of the given ids, such as all the Employments of a page of people,
+     * in one = ANY(?) query. Like readAll(), it returns new instances and leaves the identity map to the caller.
+     */
+    public List<PersistenceCapable> readReferencing(String field, Collection<UUID> ids, PostgresContext context) {
+        return readWhereAny(getSelectSql() + " WHERE e." + reference(field).column() + " = ANY(?)", ids, context);
+    }
+
+    private List<PersistenceCapable> readWhereAny(String sql, Collection<UUID> ids, PostgresContext context) {
+        List<PersistenceCapable> result = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
 
+        try {
+            PreparedStatement stmt = context.prepareStatement(sql);
+            Array idArray = context.getConnection().createArrayOf("uuid", ids.toArray());
+            try {
+                stmt.setArray(1, idArray);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        result.add((PersistenceCapable) getRecord(rs, context));
+                    }
+                }
+            } finally {
+                idArray.free();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
-        // get desired metadata for this id
-        // At this point we are only checking version and if the record is marked as deleted.
+        return result;
+    }
+
+    /** The fields of this type that refer to entities, in field order. Generated. */
+    public List<EntityReference> references() {
+        return List.of();
+    }
+
+    /** The reference with the given field name. */
+    public EntityReference reference(String field) {
+        for (EntityReference reference : references()) {
+            if (reference.field().equals(field)) {
+                return reference;
+            }
+        }
+        throw new IllegalArgumentException(getClass().getSimpleName() + " has no entity reference named " + field);
+    }
+
+    /** The id the object's reference field holds, without reading the entity. Generated for types with references. */
+    public UUID referenceId(PersistenceCapable object, String field) {
+        throw new IllegalArgumentException(getClass().getSimpleName() + " has no entity reference named " + field);
+    }
+
+    /**
+     * Loads the EAGER entity references of objects that were just read, with one readAll() per entity type for all of them together,
+     * and wires them in. The session calls this once it has registered the objects, so references back to them are found in the
+     * identity map rather than read again. The entities loaded load their own EAGER references the same way, one level per batch.
+     */
+    public void loadReferences(List<? extends PersistenceCapable> objects, PostgresContext context) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        ReferenceBatch batch = new ReferenceBatch();
+        for (PersistenceCapable object : objects) {
+            collectReferences(object, batch);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.load(context);
+        for (PersistenceCapable object : objects) {
+            wireReferences(object, batch);
+        }
+    }
 
-        boolean deleted = false;
-        int version = -1;
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT DELETED, VERSION FROM THING WHERE id = ?")) {
-            stmt.setObject(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
+    /** Adds the ids of the object's EAGER entity references to the batch. Generated for types that have any. */
+    protected void collectReferences(PersistenceCapable object, ReferenceBatch batch) {
+    }
 
-                deleted = rs.getBoolean("DELETED");
-                version = rs.getInt("VERSION");
+    /** Sets the object's EAGER entity references to the entities the batch loaded. */
+    protected void wireReferences(PersistenceCapable object, ReferenceBatch batch) {
+    }
 
-//                // TODO: should we stop here or go ahead and return the object with its metadata set including deleted?
-//                if (deleted) {
-//                    // If the record is marked as deleted, we should not return it
-//                    throw new DeletedObjectAccessException(id);
-//                }
+    /**
+     * Streams the objects whose ids are returned by the given query, for example "SELECT id FROM person WHERE name = ?".
+     * <p>
+     * The query is used as a subquery on the generated select, and the rows are read through a server-side cursor,
+     * fetchSize rows at a time, and hydrated with getRecord only as the stream is consumed. The driver only uses a cursor
+     * when the connection is not in auto-commit mode; otherwise the whole result is fetched up front.
+     * For each row, existing is asked first whether the object is already loaded, in which case that instance is returned instead.
+     * The objects that were not are passed to hydrated a fetch at a time, before any of them is returned.
+     * <p>
+     * The stream holds an open statement and must be closed, typically with try-with-resources. It also closes itself once exhausted.
+     * The order of the ids in the query is not preserved.
+     */
+    public Stream<PersistenceCapable> find(String idQuery, Object[] parameters, int fetchSize, PostgresContext context, Function<UUID, PersistenceCapable> existing,
+                                         Consumer<List<PersistenceCapable>> hydrated) {
+        String sql = getSelectSql() + " WHERE e.id IN (" + idQuery + ")";
+
+        PreparedStatement stmt;
+        ResultSet rs;
+        try {
+            // Not from the statement cache: the statement stays open for as long as the stream does, and the SQL is the caller's.
+            stmt = context.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                stmt.setFetchSize(fetchSize);
+                for (int i = 0; i < parameters.length; i++) {
+                    stmt.setObject(i + 1, parameters[i]);
+                }
+                rs = stmt.executeQuery();
+            } catch (SQLException e) {
+                stmt.close();
+                throw e;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
+        Runnable close = () -> {
+            try {
+                stmt.close(); // Also closes the ResultSet.
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        };
+
+        // Rows are hydrated a fetch at a time, which the driver holds in memory anyway, so that hydrated sees them together,
+        // for example to load their references in one batch.
+        int chunkSize = Math.max(fetchSize, 1);
+        Spliterator<PersistenceCapable> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private final ArrayDeque<PersistenceCapable> chunk = new ArrayDeque<>(chunkSize);
+            private boolean exhausted;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super PersistenceCapable> action) {
+                if (chunk.isEmpty() && !exhausted) {
+                    readChunk();
+                }
+                PersistenceCapable object = chunk.poll();
+                if (object == null) {
+                    return false;
+                }
+                action.accept(object);
+                return true;
+            }
 
-        result.getMetaData().setDeleted(deleted);
-        result.getMetaData().setVersion(version);
-
-        return result;
+            private void readChunk() {
+                List<PersistenceCapable> newObjects = new ArrayList<>();
+                try {
+                    while (chunk.size() < chunkSize) {
+                        if (!rs.next()) {
+                            exhausted = true;
+                            close.run();
+                            break;
+                        }
+                        PersistenceCapable object = existing.apply(rs.getObject("id", UUID.class));
+                        if (object == null) {
+                            object = (PersistenceCapable) getRecord(rs, context);
+                            newObjects.add(object);
+                        }
+                        chunk.add(object);
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                hydrated.accept(newObjects);
+            }
+        };
 
+        return StreamSupport.stream(rows, false).onClose(close);
     }
 
+    /**
+     * Writes the object and checks and bumps its version in THING in a single round trip.
+     * The generated upsertSql() is a writable CTE built on VERSIONED_THING_CTE: the THING row is inserted for a new object,
+     * or has its version bumped only if it still matches the in-memory version, and the entity row is written only if the
+     * CTE returned a row. An update count of 0 therefore means a version conflict, and since the check and the bump are the
+     * same statement there is no window between reading the version and writing it.
+     * <p>
+     * The object's version is not bumped here; the session does that once the write counts, see PostgresSession.
+     */
     public void upsert(PersistenceCapable object, PostgresContext context) {
-        Connection conn = context.getConnection();
-
-        String sql = upsertSql();  // Use the method to get the SQL query
-
-        // Downcast to PostgresAbstractPersistenceCapable to access getMetaData()
-        if (!(object instanceof PostgresAbstractPersistenceCapable)) {
-            throw new IllegalArgumentException("Object must be an instance of PostgresAbstractPersistenceCapable");
+        // Downcast to AbstractPersistenceCapable to access getMetaData()
+        if (!(object instanceof AbstractPersistenceCapable)) {
+            throw new IllegalArgumentException("Object must be an instance of AbstractPersistenceCapable");
         }
-        PostgresAbstractPersistenceCapable pc = (PostgresAbstractPersistenceCapable) object;
+        AbstractPersistenceCapable pc = (AbstractPersistenceCapable) object;
+        long fields = fieldsToWrite(pc);
 
-        // TODO: There is logic in a databse trigger for this, but it did not appear to be doing what I expected. Need to investigate further.
-        String sqlToInsertIntoThing = "INSERT INTO THING (id) VALUES (?) ON CONFLICT DO NOTHING"; // This is to ensure the THING table has the id before we insert into the specific table.
+        boolean written = false;
+        try {
+            PreparedStatement stmt = context.prepareStatement(fields == ALL_FIELDS ? upsertSql() : updateSql(fields));
 
+            setVersionedRecord(stmt, pc, fields, context);
 
+            written = stmt.executeUpdate() != 0;
 
-        try (PreparedStatement stmt = conn.prepareStatement(sqlToInsertIntoThing)) {
-            stmt.setObject(1, object.getId());
-            stmt.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (!written) {
+                pc.writeFailed();
+            }
+        }
+        if (!written) {
+            throw new VersionConflictException(object.getId(), pc.getMetaData().getVersion());
         }
+    }
 
-        // Check version number
+    /**
+     * Batched version of upsert for a group of objects that all share this mapper.
+     * <p>
+     * The single-statement upsert is sent as one JDBC batch for the whole group, so the number of round trips does not grow with the number of objects.
+     * An update count of 0 is a version conflict for that object; it is reported in the result and its dirty fields are put back.
+     * <p>
+     * The objects written are not changed: the session bumps their versions and clears the fields written once the write counts,
+     * which for PostgresSession.flushAsync() is only after its transaction has committed.
+     */
+    public FlushResult upsertAll(List<? extends PersistenceCapable> objects, PostgresContext context) {
+        FlushResult result = new FlushResult();
+        if (objects.isEmpty()) {
+            return result;
+        }
 
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT VERSION FROM THING WHERE id = ?")) {
-            stmt.setObject(1, object.getId());
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                int currentVersion = rs.getInt("VERSION");
-                if (pc.getMetaData().getVersion() != currentVersion) {
-                    throw new RuntimeException("Version mismatch for object with id " + object.getId() + ". Current version: " + currentVersion + ", Object version: " + pc.getMetaData().getVersion() + ". Object class: " + object.getClass().getName());
-                }
-            } else {
-                // If there is no record in THING, it means this is a new object. Set version to 0.
-                pc.getMetaData().setVersion(0);
+        for (PersistenceCapable object : objects) {
+            if (!(object instanceof AbstractPersistenceCapable)) {
+                throw new IllegalArgumentException("Object must be an instance of AbstractPersistenceCapable");
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
 
-        // Increment version number
-        pc.getMetaData().incrementVersion();
-        // Save the new version number to the database
-        try (PreparedStatement stmt = conn.prepareStatement("UPDATE THING SET VERSION = ? WHERE id = ?")) {
-            stmt.setInt(1, pc.getMetaData().getVersion());
-            stmt.setObject(2, object.getId());
-            stmt.executeUpdate();
+        // Objects that changed the same fields share a statement, so there is one batch per distinct set of changed fields.
+        Map<Long, List<AbstractPersistenceCapable>> byFields = new LinkedHashMap<>();
+        for (PersistenceCapable object : objects) {
+            AbstractPersistenceCapable pc = (AbstractPersistenceCapable) object;
+            byFields.computeIfAbsent(fieldsToWrite(pc), k -> new ArrayList<>()).add(pc);
+        }
+
+        boolean finished = false;
+        try {
+            for (Map.Entry<Long, List<AbstractPersistenceCapable>> group : byFields.entrySet()) {
+                long fields = group.getKey();
+                List<AbstractPersistenceCapable> batch = group.getValue();
+                PreparedStatement stmt = context.prepareStatement(fields == ALL_FIELDS ? upsertSql() : updateSql(fields));
+                for (AbstractPersistenceCapable pc : batch) {
+                    setVersionedRecord(stmt, pc, fields, context);
+                    stmt.addBatch();
+                }
+                int[] counts = stmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    AbstractPersistenceCapable pc = batch.get(i);
+                    if (counts[i] == 0) {
+                        pc.writeFailed();
+                        result.addVersionConflict(pc.getId());
+                    } else {
+                        result.addUpdateCount(pc.getId(), counts[i]);
+                    }
+                }
+            }
+            finished = true;
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (!finished) {
+                // The fields taken by the batches that were not written are dirty again.
+                byFields.values().forEach(batch -> batch.forEach(AbstractPersistenceCapable::writeFailed));
+            }
         }
 
+        return result;
+    }
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Bulk-loads objects that have never been written, using the COPY protocol in binary format.
+     * THING rows are copied first, at version 1, followed by the entity rows produced by the generated writeCopyRow().
+     * <p>
+     * COPY does not check for existing rows, so this must only be used for objects that are new to the database.
+     * A duplicate id fails the whole COPY, which leaves the transaction to be rolled back by the caller.
+     * As with upsertAll(), the objects are left for the session to bring up to date; a new object's version goes from 0 to 1.
+     * <p>
+     * Composite columns are written in binary by their generated codecs, which needs the attribute types PgTypes looks up for binary transfer.
+     * A type with a composite that does not qualify for it, or while binary transfer is off, is written with upsertAll() instead.
+     */
+    public FlushResult copyIn(List<? extends PersistenceCapable> objects, PostgresContext context) {
+        FlushResult result = new FlushResult();
+        if (objects.isEmpty()) {
+            return result;
+        }
 
+        PgTypes types = context.getSession().getPersistenceManager().getTypes();
+        for (PgCompositeType type : compositeTypes()) {
+            if (!types.isBinary(type.getName())) {
+                return upsertAll(objects, context);
+            }
+        }
 
-            setRecord(stmt, object, context);  // Set the record fields in the PreparedStatement
+        for (PersistenceCapable object : objects) {
+            // COPY writes every column, so all the dirty fields are written.
+            ((AbstractPersistenceCapable) object).takeDirtyFields();
+        }
 
-            stmt.executeUpdate();
+        boolean finished = false;
+        try {
+            CopyManager copyManager = context.getConnection().unwrap(PGConnection.class).getCopyAPI();
 
+            try (PgCopyBinaryWriter writer = new PgCopyBinaryWriter(copyManager.copyIn(COPY_THING_SQL))) {
+                for (PersistenceCapable object : objects) {
+                    writer.startRow(2);
+                    writer.writeUuid(object.getId());
+                    writer.writeValue(1);
+                }
+                writer.finish();
+            }
+
+            try (PgCopyBinaryWriter writer = new PgCopyBinaryWriter(copyManager.copyIn(copySql()))) {
+                for (PersistenceCapable object : objects) {
+                    writeCopyRow(writer, object, types);
+                }
+                writer.finish();
+            }
+            finished = true;
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (!finished) {
+                for (PersistenceCapable object : objects) {
+                    ((AbstractPersistenceCapable) object).writeFailed();
+                }
+            }
+        }
+
+        for (PersistenceCapable object : objects) {
+            result.addUpdateCount(object.getId(), 1);
+        }
+        return result;
+    }
+
+    // The first three parameters of upsertSql() and updateSql() belong to their THING CTE, the generated setColumns fills in the rest.
+    private void setVersionedRecord(PreparedStatement stmt, AbstractPersistenceCapable pc, long fields, PostgresContext context) throws SQLException {
+        int version = pc.getMetaData().getVersion();
+        stmt.setObject(1, pc.getId());
+        stmt.setInt(2, version + 1);
+        stmt.setInt(3, version);
+        setColumns(stmt, 4, pc, fields, context);
+    }
+
+    /**
+     * Which fields to write: the dirty fields of an object that is already in the database, or ALL_FIELDS for a full upsert.
+     * A new object, one whose changes were not made through the generated setters, and one with every field changed are upserted in full.
+     * The dirty fields are taken from the object, see AbstractPersistenceCapable.takeDirtyFields(), so the caller must
+     * tell the object whether the write committed or failed.
+     */
+    long fieldsToWrite(AbstractPersistenceCapable pc) {
+        long dirtyFields = pc.takeDirtyFields();
+        if (pc.getMetaData().getVersion() == 0 || dirtyFields == 0) {
+            return ALL_FIELDS;
         }
+        int columns = columnNames().size();
+        long allColumns = columns >= 64 ? ALL_FIELDS : (1L << columns) - 1;
+        return (dirtyFields & allColumns) == allColumns ? ALL_FIELDS : dirtyFields & allColumns;
+    }
+
+    /**
+     * An UPDATE of only the columns whose bits are set, with the same version check and bump as upsertSql() and the same first three parameters.
+     * Objects usually change the same few fields, so the statements are built once per set of fields and cached; together with the
+     * statement cache of PostgresContext each variant is prepared once per connection. Leaving the other columns alone keeps the
+     * new row versions, and with them the WAL and replication traffic, small.
+     */
+    protected String updateSql(long fields) {
+        String sql = updateSqlCache.get(fields);
+        if (sql == null) {
+            List<String> columns = columnNames();
+            StringBuilder sb = new StringBuilder(VERSIONED_THING_UPDATE_CTE.formatted(tableName())).append("UPDATE ").append(tableName()).append(" e SET ");
+            String separator = "";
+            for (int i = 0; i < columns.size(); i++) {
+                if (isSet(fields, i)) {
+                    sb.append(separator).append(columns.get(i)).append(" = ?");
+                    separator = ", ";
+                }
+            }
+            sql = sb.append(" FROM thing_row WHERE e.id = thing_row.id").toString();
+            // Masks come from the generated setters, so there are few of them; the bound only guards against pathological use.
+            if (updateSqlCache.size() < MAX_CACHED_UPDATE_STATEMENTS) {
+                updateSqlCache.put(fields, sql);
+            }
+        }
+        return sql;
+    }
+
+    /** For the generated setColumns(): whether field i is among the fields to write. */
+    protected static boolean isSet(long fields, int field) {
+        return (fields & AbstractPersistenceCapable.dirtyBit(field)) != 0;
     }
 
     /** Delete can be done in the AbstractMapper since deleting from the THING table should induce a cascade delete in the related tables, and there is no individual logic needed for delete like there is for upsert and read.
     */
     public void delete(PersistenceCapable object, PostgresContext context) {
-        var conn = context.getConnection();
-        String sql = "DELETE FROM THING WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try {
+            PreparedStatement stmt = context.prepareStatement(DELETE_SQL);
             stmt.setObject(1, object.getId());
             stmt.executeUpdate();
         } catch (SQLException e) {
@@ -185,83 +507,136 @@ public abstract class PostgresAbstractMapper implements PostgresMapper {
         }
     }
 
+    private static final String DELETE_SQL = "DELETE FROM THING WHERE id = ?";
+
+    /**
+     * Prefix of every generated upsertSql(). Parameters are the id, the new version and the expected version.
+     * A new object gets its THING row inserted at the new version. An existing row is only bumped if its version still matches,
+     * otherwise the CTE is empty and the entity insert that selects from it writes nothing.
+     */
+    protected static final String VERSIONED_THING_CTE = "WITH thing_row AS (" +
+            "INSERT INTO THING (id, VERSION) VALUES (?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET VERSION = EXCLUDED.VERSION WHERE THING.VERSION = ? " +
+            "RETURNING id) ";
+
+    /**
+     * Like VERSIONED_THING_CTE, but for an object known to be in the database, so the THING row is only ever updated.
+     * The entity table is filled in by updateSql(). The version is only bumped if the entity row is there to be updated too:
+     * without it the UPDATE would write nothing, and the bump would be a version no row has.
+     */
+    private static final String VERSIONED_THING_UPDATE_CTE = "WITH thing_row AS (" +
+            "UPDATE THING SET VERSION = v.new_version FROM (SELECT ?::uuid AS id, ?::int AS new_version, ?::int AS expected) v " +
+            "WHERE THING.id = v.id AND THING.VERSION = v.expected AND EXISTS (SELECT 1 FROM %s WHERE id = v.id) " +
+            "RETURNING THING.id) ";
+
+    /** Passed to setColumns() for all the columns. */
+    protected static final long ALL_FIELDS = -1L;
+
+    private static final int MAX_CACHED_UPDATE_STATEMENTS = 256;
+
+    // The UPDATE statements built by updateSql(), by fields. Shared by all threads, like the mapper.
+    private final Map<Long, String> updateSqlCache = new ConcurrentHashMap<>();
+
     protected abstract String upsertSql();
 
-    protected abstract void setRecord(PreparedStatement stmt, PersistenceCapable object, PostgresContext context) throws SQLException;
+    /** The entity table, for the statements built at run time. */
+    protected abstract String tableName();
+
+    /** The entity's own columns, in field order. Column i is written when bit i of the dirty-field mask is set, see AbstractPersistenceCapable. */
+    protected abstract List<String> columnNames();
+
+    /** Sets all of the entity's own columns, starting at the given parameter index. The id is supplied by the CTE. */
+    protected void setRecord(PreparedStatement stmt, int index, PersistenceCapable object, PostgresContext context) throws SQLException {
+        setColumns(stmt, index, object, ALL_FIELDS, context);
+    }
+
+    /** Sets the columns of the given fields, in field order, starting at the given parameter index. */
+    protected abstract void setColumns(PreparedStatement stmt, int index, PersistenceCapable object, long fields, PostgresContext context) throws SQLException;
+
+    /**
+     * The generated read SQL selects from the entity table aliased as e joined to THING aliased as t,
+     * and appends these columns so the metadata comes back in the same row as the entity. getRecord reads them with readMetaData.
+     */
+    protected static final String THING_METADATA_COLUMNS = "t.DELETED AS thing_deleted, t.VERSION AS thing_version";
+
+    protected static void readMetaData(ResultSet rs, AbstractPersistenceCapable object) throws SQLException {
+        object.getMetaData().setDeleted(rs.getBoolean("thing_deleted"));
+        object.getMetaData().setVersion(rs.getInt("thing_version"));
+    }
+
+    /** The generated select over the entity table joined to THING, without a WHERE clause. The by-id reads and find() add their own. */
+    protected abstract String getSelectSql();
 
     protected abstract String getReadSql();
 
+    /** Same columns as getReadSql(), but for WHERE e.id = ANY(?) with a uuid[] parameter. */
+    protected abstract String getReadAllSql();
+
+    private static final String COPY_THING_SQL = "COPY THING (id, VERSION) FROM STDIN (FORMAT BINARY)";
+
+    /** The COPY ... FROM STDIN (FORMAT BINARY) statement for the entity table, with the columns in the order writeCopyRow() writes them. */
+    protected abstract String copySql();
+
+    /** Writes the entity row of the object. Composite columns are encoded by their codecs, with the attribute types from the given PgTypes. */
+    protected abstract void writeCopyRow(PgCopyBinaryWriter writer, PersistenceCapable object, PgTypes types) throws SQLException;
+
+    /** The composite types of this type's record-valued fields, registered with PgTypes for binary transfer. */
+    public List<PgCompositeType> compositeTypes() {
+        return List.of();
+    }
+
+    /** Hydrates the row the ResultSet is currently positioned on. The caller is responsible for advancing the cursor. */
     protected abstract Object getRecord(ResultSet rs, PostgresContext context) throws SQLException;
 
+    /**
+     * Captures the state of an object for the SecondLevelCache: its field values and the version and deleted flag it was read with.
+     * Objects are never cached themselves, only their snapshots.
+     */
+    public SecondLevelCache.Snapshot snapshot(PersistenceCapable object, Class interfaceType) {
+        MetaData metaData = ((AbstractPersistenceCapable) object).getMetaData();
+        return new SecondLevelCache.Snapshot(interfaceType, object.getId(), snapshotValues(object), metaData.getVersion(), metaData.isDeleted());
+    }
+
+    /** Builds a new object from a snapshot, as if it had been read from the database at the snapshot's version. */
+    public PersistenceCapable materialize(SecondLevelCache.Snapshot snapshot, PostgresContext context) {
+        AbstractPersistenceCapable object = materializeFields(snapshot, context);
+        object.getMetaData().setVersion(snapshot.getVersion());
+        object.getMetaData().setDeleted(snapshot.isDeleted());
+        return object;
+    }
+
+    /** The field values in field order. Referenced entities are given as their ids, so the snapshot does not hold other objects. */
+    protected abstract Object[] snapshotValues(PersistenceCapable object);
+
+    /** Creates the object and loads its fields from the values returned by snapshotValues(). The metadata is set by materialize(). */
+    protected abstract AbstractPersistenceCapable materializeFields(SecondLevelCache.Snapshot snapshot, PostgresContext context);
+
     // These methods for parsing and unparsing PgRecords should be moved to PostgresAbstractMapper or a utility class.
+    // They now go through PgCompositeReader and PgCompositeWriter, so they follow Postgres' escaping rules:
+    // doubled quotes are read back as one quote, and the empty string is kept apart from NULL.
     public static List<String> parsePgRecord(String record) {
-        if (record == null || record.length() < 2 || record.charAt(0) != '(' || record.charAt(record.length() - 1) != ')') {
-            throw new IllegalArgumentException("Invalid PostgreSQL composite format: " + record);
-        }
-
+        PgCompositeReader reader = new PgCompositeReader(record);
         List<String> result = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        boolean inQuotes = false;
-        boolean inEscape = false;
-
-        for (int i = 1; i < record.length() - 1; i++) {
-            char c = record.charAt(i);
-
-            if (inEscape) {
-                sb.append(c);
-                inEscape = false;
-            } else if (c == '\\') {
-                inEscape = true;
-            } else if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                result.add(convertNull(sb.toString()));
-                sb.setLength(0);
-            } else {
-                sb.append(c);
-            }
+        while (reader.hasNext()) {
+            reader.next();
+            result.add(reader.isNull() ? null : reader.readString());
         }
-
-        result.add(convertNull(sb.toString()));  // final field
         return result;
     }
 
-    private static String convertNull(String s) {
-        return s.isEmpty() ? null : s;
-    }
-
-    // BEGIN WARNING: The following methods were generated by chatGPT and may not be fully tested or optimized.
     public static String unparsePgRecord(List<String> fields) {
-        StringBuilder sb = new StringBuilder("(");
-
-        for (int i = 0; i < fields.size(); i++) {
-            String field = fields.get(i);
+        PgCompositeWriter writer = new PgCompositeWriter().begin();
+        for (String field : fields) {
             if (field == null) {
-                sb.append(""); // PostgreSQL treats empty string as NULL in record input
-            } else if (needsQuoting(field)) {
-                sb.append('"').append(escapeQuoted(field)).append('"');
+                writer.writeNull();
             } else {
-                sb.append(field);
-            }
-
-            if (i < fields.size() - 1) {
-                sb.append(',');
+                writer.writeString(field);
             }
         }
-
-        sb.append(')');
-        return sb.toString();
-    }
-
-    private static boolean needsQuoting(String field) {
-        // Per PostgreSQL docs, quote if it contains special chars
-        return field.contains(",") || field.contains("\"") || field.contains("\\") || field.contains(" ");
-    }
-
-    private static String escapeQuoted(String field) {
-        return field.replace("\\", "\\\\").replace("\"", "\\\"");
+        return writer.finish();
     }
 
+    // BEGIN WARNING: The following methods were generated by chatGPT and may not be fully tested or optimized.
     public static PGobject createPgObject(String typeName, List<String> fields) throws SQLException {
         PGobject pg = new PGobject();
         pg.setType(typeName); // e.g., "my_udt_type"
@@ -300,19 +675,16 @@ public abstract class PostgresAbstractMapper implements PostgresMapper {
     public static String serializeToPostgresComposite(Object record) {
         try {
             RecordComponent[] components = record.getClass().getRecordComponents();
-            List<String> parts = new ArrayList<>();
+            PgCompositeWriter writer = new PgCompositeWriter().begin();
             for (RecordComponent component : components) {
                 Object value = component.getAccessor().invoke(record);
                 if (value == null) {
-                    parts.add("");
-                } else if (value instanceof String s) {
-                    String escaped = s.replace("\"", "\"\"");
-                    parts.add("\"" + escaped + "\"");
+                    writer.writeNull();
                 } else {
-                    parts.add(value.toString());
+                    writer.writeString(value.toString());
                 }
             }
-            return "(" + String.join(",", parts) + ")";
+            return writer.finish();
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize record to composite string", e);
         }
@@ -3,20 +3,123 @@ package com.ahimsasystems.chenup.postgresdb;
 import com.ahimsasystems.chenup.core.PersistenceContext;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 // © 2025 Stephen W. Strom
 // Licensed under the MIT License. See LICENSE file in the project root for details.
-public final class PostgresContext implements PersistenceContext {
+
+/**
+ * The context for one connection's worth of work.
+ * <p>
+ * Besides carrying the connection, the context owns a bounded, least-recently-used cache of prepared statements keyed by SQL.
+ * The mappers' SQL is fixed per type, so the same few statements are prepared over and over; reusing them lets the driver
+ * switch to server-side prepared statements and skip the parse and plan on every call.
+ * <p>
+ * Statements returned by prepareStatement() belong to the cache and must not be closed by the caller; close their ResultSets only.
+ * Closing the context closes the cached statements but not the connection. With a connection pool, close the context
+ * before handing the connection back, since the statements are only valid for the connection they were prepared on.
+ * A context is meant to be used by one thread at a time, like the connection and the session it wraps.
+ * While it is open it is also the context the session reads LAZY entity references through, see LazyReference.
+ */
+public final class PostgresContext implements PersistenceContext, AutoCloseable {
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
     private final Connection connection;
-    private final PostgresPersistenceManager persistenceManager;
-    public PostgresContext(Connection connection, PostgresPersistenceManager persistenceManager) {
+    private final PostgresSession session;
+    private final Map<String, PreparedStatement> statementCache;
+    private long statementCacheHits;
+    private long statementCacheMisses;
+
+    public PostgresContext(Connection connection, PostgresSession session) {
+        this(connection, session, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public PostgresContext(Connection connection, PostgresSession session, int statementCacheSize) {
+        this(connection, session, statementCacheSize, true);
+    }
+
+    // The contexts of a PostgresContextPool are used by other threads than the session's own, so they are not the context lazy references read through.
+    PostgresContext(Connection connection, PostgresSession session, int statementCacheSize, boolean resolvesReferences) {
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be at least 1, was " + statementCacheSize);
+        }
         this.connection = connection;
-        this.persistenceManager = persistenceManager;
+        this.session = session;
+        // Registers the composite types with the driver. The first context also looks up their OIDs, see PgTypes.
+        session.getPersistenceManager().getTypes().prepare(connection);
+        // Lazy references read through the open context of their session.
+        if (resolvesReferences) {
+            session.contextOpened(this);
+        }
+        this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
     }
+
     public Connection getConnection() {
         return connection;
     }
-    public PostgresPersistenceManager getPersistenceManager() {
-        return persistenceManager;
+
+    // The session that objects read through this context are registered in.
+    public PostgresSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns a cached statement for this SQL, preparing it on a miss. Parameters and batches left over from the previous use are cleared.
+     * A statement that was closed underneath the cache, for example by a pool reclaiming the connection's statements, is prepared again.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement stmt = statementCache.get(sql);
+        if (stmt != null && !stmt.isClosed()) {
+            statementCacheHits++;
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+        statementCacheMisses++;
+        stmt = connection.prepareStatement(sql);
+        statementCache.put(sql, stmt);
+        return stmt;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCache.size();
+    }
+
+    /** Closes all cached statements. The connection itself is left open. */
+    @Override
+    public void close() {
+        session.contextClosed(this);
+        for (PreparedStatement stmt : statementCache.values()) {
+            closeQuietly(stmt);
+        }
+        statementCache.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // The statement is being discarded either way.
+        }
     }
 }
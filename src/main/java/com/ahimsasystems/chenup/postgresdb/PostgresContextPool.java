@@ -0,0 +1,156 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The contexts a session's async operations (readAsync(), readAllAsync(), flushAsync()) run on, each with its own connection.
+ * <p>
+ * Contexts are opened when they are first needed, up to the size of the pool, and then kept with their statement caches
+ * until the pool is closed. Tasks beyond the size wait for a context to come back, so the pool also bounds the number of
+ * connections one request can take from the DataSource, however wide it fans out.
+ * <p>
+ * The pool belongs to one session, like a PostgresContext. Its contexts are not the session's open context, so LAZY references
+ * are still followed through the context the caller opened, on the caller's thread. Close the pool, for example with
+ * try-with-resources, once its operations have completed; that closes the contexts and hands the connections back.
+ * <pre>
+ *     try (PostgresContextPool pool = session.openContextPool(dataSource)) {
+ *         CompletableFuture&lt;Person&gt; person = session.readAsync(personId, Person.class, pool);
+ *         CompletableFuture&lt;List&lt;Organization&gt;&gt; organizations = session.readAllAsync(organizationIds, Organization.class, pool);
+ *         CompletableFuture.allOf(person, organizations).join();
+ *         ...
+ *     }
+ * </pre>
+ */
+public final class PostgresContextPool implements AutoCloseable {
+    private final PostgresSession session;
+    private final DataSource dataSource;
+    private final Executor executor;
+    private final int size;
+    private final Semaphore available;
+    private final ConcurrentLinkedDeque<PostgresContext> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PostgresContext> opened = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public PostgresContextPool(PostgresSession session, DataSource dataSource, int size, Executor executor) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Context pool size must be at least 1, was " + size);
+        }
+        this.session = session;
+        this.dataSource = dataSource;
+        this.size = size;
+        this.executor = executor;
+        this.available = new Semaphore(size, true);
+    }
+
+    public PostgresSession getSession() {
+        return session;
+    }
+
+    // The executor the operations on this pool run on.
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // The number of contexts opened so far, which is at most the size.
+    public int getOpenedCount() {
+        return opened.size();
+    }
+
+    /**
+     * Runs the work with a context of the pool, waiting for one if they are all in use, and puts the context back afterwards.
+     * Called by the async operations of the session on the executor's threads.
+     */
+    public <R> R withContext(Function<PostgresContext, R> work) {
+        PostgresContext context = acquire();
+        try {
+            return work.apply(context);
+        } finally {
+            release(context);
+        }
+    }
+
+    private PostgresContext acquire() {
+        if (closed) {
+            throw new IllegalStateException("The context pool is closed");
+        }
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a context", e);
+        }
+        PostgresContext context = idle.pollFirst();
+        if (context != null) {
+            return context;
+        }
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            context = new PostgresContext(connection, session, PostgresContext.DEFAULT_STATEMENT_CACHE_SIZE, false);
+        } catch (SQLException | RuntimeException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+            available.release();
+            throw new RuntimeException("Failed to open a connection for the context pool", e);
+        }
+        opened.add(context);
+        return context;
+    }
+
+    // Most recently used first, so a few contexts stay busy and warm instead of all of them being used in turn.
+    private void release(PostgresContext context) {
+        idle.offerFirst(context);
+        // Checked after the offer, so a context put back while the pool is being closed is not left open.
+        if (closed) {
+            closeIdle();
+        }
+        available.release();
+    }
+
+    /**
+     * Closes the contexts and their connections. Contexts still in use by an operation are closed when it puts them back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdle();
+    }
+
+    private void closeIdle() {
+        PostgresContext context;
+        while ((context = idle.pollFirst()) != null) {
+            closeQuietly(context);
+        }
+    }
+
+    private void closeQuietly(PostgresContext context) {
+        opened.remove(context);
+        context.close();
+        Connection connection = context.getConnection();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // The connection is being discarded either way.
+        }
+    }
+}
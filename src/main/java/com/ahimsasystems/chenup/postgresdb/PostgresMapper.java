@@ -1,12 +1,17 @@
 package com.ahimsasystems.chenup.postgresdb;
 
+import com.ahimsasystems.chenup.core.FlushResult;
 import com.ahimsasystems.chenup.core.PersistenceCapable;
-import com.ahimsasystems.chenup.core.PersistenceManager;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 // © 2025 Stephen W. Strom
 // Licensed under the MIT License. See LICENSE file in the project root for details.
@@ -23,6 +28,19 @@ public interface PostgresMapper {
      */
     public PersistenceCapable read(@NotNull UUID id, PostgresContext context);
 
+    /** Reads many objects of this type in one round trip. Like read(), it always returns new instances; ids with no row are left out. */
+    public List<PersistenceCapable> readAll(@NotNull Collection<UUID> ids, PostgresContext context);
+
+    /**
+     * Lazily streams the objects whose ids the query returns, reusing the instances that existing already knows about. The stream must be closed.
+     * The new instances are handed to hydrated a fetch at a time, before they are streamed.
+     */
+    public Stream<PersistenceCapable> find(@NotNull String idQuery, Object[] parameters, int fetchSize, PostgresContext context, Function<UUID, PersistenceCapable> existing,
+                                           Consumer<List<PersistenceCapable>> hydrated);
+
+    /** Loads the EAGER entity references of objects just read, one query per referenced type for all of them together. */
+    public void loadReferences(@NotNull List<? extends PersistenceCapable> objects, PostgresContext context);
+
 
     /** insert and update make assumptions that need to be checked before they are called.
      * Insert assumes that the object is not already in the persistent store and will do a straight insert
@@ -34,10 +52,19 @@ public interface PostgresMapper {
      */
     public void upsert(@NotNull PersistenceCapable object, PostgresContext context) throws SQLException;
 
+    /** Upserts a group of objects of the same type using JDBC batches, reporting update counts and version conflicts per object.
+     * Objects with a version conflict are not written.
+     */
+    public FlushResult upsertAll(@NotNull List<? extends PersistenceCapable> objects, PostgresContext context);
+
+    /** Bulk-loads objects that are new to the database through COPY. See PostgresAbstractMapper.copyIn for the restrictions. */
+    public FlushResult copyIn(@NotNull List<? extends PersistenceCapable> objects, PostgresContext context);
+
 
     // This shouldn't be necessary at this level because it is implementation-specific.
     // public void setConnection(@NotNull java.sql.Connection connection);
 
-    public void setPersistenceManager(@NotNull PersistenceManager persistenceManager);
+    // Mappers no longer hold a PersistenceManager. They are shared singletons and get everything from the PostgresContext.
+    // public void setPersistenceManager(@NotNull PersistenceManager persistenceManager);
 
 }
@@ -0,0 +1,749 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.AbstractPersistenceManager;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.IdentityMap;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.PersistenceMetrics;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
+import com.ahimsasystems.chenup.core.exceptions.VersionConflictException;
+import org.jetbrains.annotations.NotNull;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * PostgresSession is an implementation of PersistenceManager that handles the persistence of objects in a PostgreSQL database
+ * for one unit of work, typically one request or one transaction.
+ * Sessions are opened from the application-wide PostgresPersistenceManager, which holds the registries of types and mappers.
+ * Opening one is cheap: it takes a reference to the current registries and creates empty collections.
+ * <p>
+ * A session is not thread-safe and is meant to be used by one thread at a time, like the PostgresContext it is used with.
+ * Because each request has its own session, requests do not share any mutable state and do not contend on a lock,
+ * so they scale with the number of threads, including virtual threads.
+ * The exception are the async reads, readAsync() and readAllAsync(), which run side by side on the threads of a PostgresContextPool:
+ * the read methods take the session's lock around their use of the identity map and do the JDBC work outside it.
+ * The other exception are the setters of VOLATILE and SNAPSHOT objects, which may be called from several threads at once, for example
+ * on an object shared by many readers and a writer. dirty() and the parts of create() and the flushes that change the pending objects
+ * take the same lock, so setters may run while the session is flushing, and a change that arrives while its object is being written
+ * is written by the next flush. Reads, create() and flushes themselves are still started by one thread at a time.
+ * <p>
+ * Rather than planting flags in the objects to track their state, it uses collections to manage the state of persistent objects.
+ * These collections include:
+ * - persistentNew: A set of objects that are newly created and not yet persisted to the database.
+ * - persistentDirty: A set of objects that have been modified since they were read or last flushed.
+ * - identityMap: All objects currently managed by the persistence manager, indexed by their UUID, together with their interface type.
+ * - ... Other states as needed.
+ * <p>
+ * The identity map should be implemented such that the other collections are all subsets of it.
+ * So whenever an object is added to any of the other collections, it is also pinned in the identity map, and unpinned once it has been flushed.
+ * Pinned objects are held strongly. Clean objects are held however the configured IdentityMap chooses; the default is a
+ * ReferenceIdentityMap with weak references, so a long-lived session only keeps the objects the application is still using,
+ * and a long find() scan does not accumulate every row it has passed. See setIdentityMap() for the alternatives.
+ * <p>
+ * The other collections should be implemented as disjoint sets, meaning that an object should only appear in one of them at a time.
+ * At this point there is no restriction that says an object must be in one of the subsets of the identity map, that is, these subsets do not partition the identity map. This may change in the future.
+ * The plan is to create a new set of collection classes or at least interfaces that will allow for this kind of disjoint set management automatically.
+ * This is very much a preliminary step towards allowing for relationships that function this way, for example, a Relative relationship return all objects in sub-relationships, including spouses, children, etc. This will not be implemented in the first release, however.
+ * <p>
+ * Note that if an object does not have an ID, one will be generated for it.
+ * However, if an object already has an ID, it will not be changed.
+ * The caller may choose to set the ID before calling persist, even for an object which has not yet been marked with persist(), or it may choose to let the persistence manager generate one at the time persist() is called.
+ * Since these are UUIDs, they will be unique of how the UUID is generated. However, it is highly recommended that the caller use a UUIDv7 generator to ensure that the IDs are unique and ordered by creation time. chenup.core.UUIDv7Generator is a good choice for this purpose.
+ */
+public class PostgresSession extends AbstractPersistenceManager<PostgresContext> {
+    private final PostgresPersistenceManager manager;
+    // Snapshots of the manager's registries, taken when the session is opened. They are immutable, so they are read without locking.
+    private final Map<Class, PostgresAbstractMapper> mappers;
+    private final Map<Class, Supplier> types;
+    private IdentityMap identityMap;
+
+    final private Map<UUID, PersistenceCapable> persistentNew = new HashMap<>();
+    final private Map<UUID, PersistenceCapable> persistentDirty = new HashMap<>();
+    // The most recently opened context that is still open, which lazy references are resolved through.
+    private PostgresContext openContext;
+    // Guards the identity map while async reads are running, and the pending objects against the setters of VOLATILE and SNAPSHOT objects.
+    // Uncontended, as it usually is, it costs one atomic operation per use.
+    // A ReentrantLock rather than synchronized, so a virtual thread waiting for it does not pin its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ids written by flush() or flushBatched() in the caller's transaction, whose snapshots afterCommit() drops once it has committed.
+    private final Set<UUID> awaitingCommit = new HashSet<>();
+
+    PostgresSession(PostgresPersistenceManager manager, Map<Class, PostgresAbstractMapper> mappers, Map<Class, Supplier> types, IdentityMap identityMap) {
+        this.manager = manager;
+        this.mappers = mappers;
+        this.types = types;
+        this.identityMap = identityMap;
+    }
+
+    public PostgresPersistenceManager getPersistenceManager() {
+        return manager;
+    }
+
+    public IdentityMap getIdentityMap() {
+        return identityMap;
+    }
+
+    /**
+     * Replaces the identity map, for example with a soft ReferenceIdentityMap, an LruIdentityMap with a fixed bound, or a StrongIdentityMap.
+     * This must be done before any objects are created or read, since the objects in the old map are not carried over.
+     * To change the kind of identity map for every session, use PostgresPersistenceManager.setIdentityMapFactory() instead.
+     */
+    public void setIdentityMap(@NotNull IdentityMap identityMap) {
+        if (!persistentNew.isEmpty() || !persistentDirty.isEmpty()) {
+            throw new IllegalStateException("The identity map cannot be replaced while there are unflushed objects.");
+        }
+        this.identityMap = identityMap;
+    }
+
+    public Object create(@NotNull Class interfaceClass) {
+
+        var constructor = types.get(interfaceClass);
+        if (constructor == null) {
+            throw new IllegalArgumentException("No constructor registered for class: " + interfaceClass.getName());
+        }
+        var instance = constructor.get();
+        if (!(instance instanceof PersistenceCapable)) {
+            throw new IllegalArgumentException("The class " + interfaceClass.getName() + " does not implement PersistenceCapable.");
+        }
+
+
+        ( (AbstractPersistenceCapable) instance).setPersistenceManager(this);
+        lock.lock();
+        try {
+            identityMap.put((PersistenceCapable) instance, interfaceClass);
+            identityMap.pin(((PersistenceCapable) instance).getId());
+            persistentNew.put(((PersistenceCapable) instance).getId(), (PersistenceCapable) instance);
+        } finally {
+            lock.unlock();
+        }
+        // setNew((PersistenceCapable) instance);
+
+
+        return instance;
+    }
+
+
+    /**
+     * Note that this uses Bloch's (from 3rd ed.) Item 33: Consider typesafe heterogeneous containers.
+     */
+    public <T extends PersistenceCapable> T read(UUID id, Class interfaceClass, PostgresContext context) {
+
+        PersistenceMetrics metrics = manager.getMetrics();
+        lock.lock();
+        try {
+            PersistenceCapable existing = identityMap.get(id);
+            metrics.identityMapLookup(interfaceClass, existing != null);
+            if (existing != null) {
+                return (T) existing;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // ... check the database for the object with this ID
+        // If not found, return null or throw an exception based on your design choice.
+        // For now, assume it is there and call the mapper to read it.
+        // Got to figure out the class of the ID, which is a UUID, so we can get the mapper for it.
+        // I guess we need another registry for the types of the objects by UUID.
+        // For now, pass it?
+        PostgresAbstractMapper mapper = mappers.get(interfaceClass);
+        if (mapper != null) {
+            SecondLevelCache cache = manager.getSecondLevelCache();
+            SecondLevelCache.Snapshot snapshot = cache != null ? cache.get(id) : null;
+            if (snapshot != null && snapshot.getInterfaceType() == interfaceClass) {
+                // This session gets its own copy, at the version the snapshot was read at.
+                PersistenceCapable materialized = mapper.materialize(snapshot, context);
+                PersistenceCapable registered = register(materialized, interfaceClass);
+                if (registered == materialized) {
+                    mapper.loadReferences(List.of(materialized), context);
+                }
+                return (T) registered;
+            }
+
+            ReadCoalescer coalescer = manager.getReadCoalescer();
+            if (coalescer != null && inAutoCommit(context)) {
+                // Read in a batch with the point reads of other sessions, and materialized from the snapshot like a cache hit.
+                long start = System.nanoTime();
+                SecondLevelCache.Snapshot coalesced = coalescer.read(id, interfaceClass, mapper, context);
+                metrics.read(interfaceClass, coalesced != null ? 1 : 0, System.nanoTime() - start);
+                if (coalesced == null) {
+                    return null;
+                }
+                if (cache != null) {
+                    cache.put(coalesced);
+                }
+                PersistenceCapable materialized = mapper.materialize(coalesced, context);
+                PersistenceCapable registered = register(materialized, interfaceClass);
+                if (registered == materialized) {
+                    mapper.loadReferences(List.of(materialized), context);
+                }
+                return (T) registered;
+            }
+
+            long start = System.nanoTime();
+            var result = (T) mapper.read(id, context);
+            metrics.read(interfaceClass, result != null ? 1 : 0, System.nanoTime() - start);
+            if (result == null) {
+                // No such row. Nothing is registered, so a later read will look again.
+                return null;
+            }
+
+            PersistenceCapable registered = register((PersistenceCapable) result, interfaceClass);
+            if (registered != result) {
+                // An async read of the same object got there first.
+                return (T) registered;
+            }
+            if (cache != null) {
+                cache.put(mapper.snapshot((PersistenceCapable) result, interfaceClass));
+            }
+            // After the put, so that references back to this object find it.
+            mapper.loadReferences(List.of((PersistenceCapable) result), context);
+
+            return result;
+        }
+
+        return null;
+    }
+
+    /**
+     * Resolves a LazyReference. An object already in the identity map is returned without a query, so following many references
+     * to the same entity reads it once. Otherwise it is read like read() does, through the session's open PostgresContext;
+     * following a reference to an unloaded object after the context has been closed is an error.
+     */
+    public <T extends PersistenceCapable> T resolve(UUID id, Class interfaceClass) {
+        PostgresContext context = openContext;
+        if (context != null) {
+            return read(id, interfaceClass, context);
+        }
+        PersistenceCapable existing = lookup(id);
+        if (existing == null) {
+            throw new IllegalStateException("Cannot load " + interfaceClass.getSimpleName() + " " + id
+                    + " lazily, since the session has no open PostgresContext. Follow the reference while a context is open, or fetch it EAGER.");
+        }
+        return (T) existing;
+    }
+
+    private static boolean inAutoCommit(PostgresContext context) {
+        try {
+            return context.getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read the auto-commit mode", e);
+        }
+    }
+
+    private PersistenceCapable lookup(UUID id) {
+        lock.lock();
+        try {
+            return identityMap.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts an object that was just read into the identity map and returns it. If an async read has registered the same object
+     * in the meantime, that one is returned instead and the new one is dropped, so there is still one instance per id.
+     */
+    private PersistenceCapable register(PersistenceCapable object, Class interfaceClass) {
+        lock.lock();
+        try {
+            if (identityMap.containsKey(object.getId())) {
+                return identityMap.get(object.getId());
+            }
+            identityMap.put(object, interfaceClass);
+            return object;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called by PostgresContext when it is opened and closed.
+    void contextOpened(PostgresContext context) {
+        openContext = context;
+    }
+
+    void contextClosed(PostgresContext context) {
+        if (openContext == context) {
+            openContext = null;
+        }
+    }
+
+    /**
+     * Reads many objects of one type at once.
+     * Ids already in the identity map are returned from there; all the others are loaded by the mapper with a single = ANY(?) query
+     * and registered, so a page of ids costs at most one round trip however many of them are missing.
+     * The EAGER references of the objects loaded are then loaded together, one query per referenced type, see ReferenceBatch.
+     * The result follows the order of the requested ids. Ids that do not exist in the database are left out.
+     * When the manager has a SecondLevelCache, ids with a snapshot there are materialized from it and only the rest are queried.
+     */
+    public <T extends PersistenceCapable> List<T> readAll(Collection<UUID> ids, Class interfaceClass, PostgresContext context) {
+
+        // The objects found are held here until the result is built, so none of them can be evicted in between.
+        Map<UUID, PersistenceCapable> found = new HashMap<>();
+        PersistenceMetrics metrics = manager.getMetrics();
+        Set<UUID> missing = new LinkedHashSet<>();
+        lock.lock();
+        try {
+            for (UUID id : ids) {
+                PersistenceCapable existing = identityMap.get(id);
+                metrics.identityMapLookup(interfaceClass, existing != null);
+                if (existing != null) {
+                    found.put(id, existing);
+                } else {
+                    missing.add(id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!missing.isEmpty()) {
+            PostgresAbstractMapper mapper = mappers.get(interfaceClass);
+            if (mapper == null) {
+                throw new IllegalArgumentException("No mapper registered for class: " + interfaceClass.getName());
+            }
+
+            // Everything read here, so their references can be loaded together at the end.
+            List<PersistenceCapable> hydrated = new ArrayList<>(missing.size());
+            SecondLevelCache cache = manager.getSecondLevelCache();
+            if (cache != null) {
+                for (Iterator<UUID> it = missing.iterator(); it.hasNext(); ) {
+                    SecondLevelCache.Snapshot snapshot = cache.get(it.next());
+                    if (snapshot != null && snapshot.getInterfaceType() == interfaceClass) {
+                        PersistenceCapable materialized = mapper.materialize(snapshot, context);
+                        PersistenceCapable registered = register(materialized, interfaceClass);
+                        found.put(registered.getId(), registered);
+                        if (registered == materialized) {
+                            hydrated.add(materialized);
+                        }
+                        it.remove();
+                    }
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                long start = System.nanoTime();
+                List<PersistenceCapable> loadedObjects = mapper.readAll(missing, context);
+                metrics.read(interfaceClass, loadedObjects.size(), System.nanoTime() - start);
+                for (PersistenceCapable loaded : loadedObjects) {
+                    PersistenceCapable registered = register(loaded, interfaceClass);
+                    found.put(registered.getId(), registered);
+                    if (registered == loaded) {
+                        hydrated.add(loaded);
+                        if (cache != null) {
+                            cache.put(mapper.snapshot(loaded, interfaceClass));
+                        }
+                    }
+                }
+            }
+
+            mapper.loadReferences(hydrated, context);
+        }
+
+        List<T> result = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            PersistenceCapable object = found.get(id);
+            if (object != null) {
+                result.add((T) object);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the objects of one type whose reference field refers to any of the ids, for example the Employments of a set of people,
+     * with a single = ANY(?) query. Objects already in the identity map are returned as they are, the others are registered,
+     * and the EAGER references of the new ones are then loaded together, like readAll() does.
+     */
+    public <T extends PersistenceCapable> List<T> readReferencing(Class interfaceClass, String field, Collection<UUID> ids, PostgresContext context) {
+        PostgresAbstractMapper mapper = mappers.get(interfaceClass);
+        if (mapper == null) {
+            throw new IllegalArgumentException("No mapper registered for class: " + interfaceClass.getName());
+        }
+
+        long start = System.nanoTime();
+        List<PersistenceCapable> loadedObjects = mapper.readReferencing(field, ids, context);
+        manager.getMetrics().read(interfaceClass, loadedObjects.size(), System.nanoTime() - start);
+
+        List<T> result = new ArrayList<>(loadedObjects.size());
+        List<PersistenceCapable> hydrated = new ArrayList<>(loadedObjects.size());
+        for (PersistenceCapable loaded : loadedObjects) {
+            PersistenceCapable registered = register(loaded, interfaceClass);
+            if (registered == loaded) {
+                hydrated.add(loaded);
+            }
+            result.add((T) registered);
+        }
+        mapper.loadReferences(hydrated, context);
+        return result;
+    }
+
+    /**
+     * Streams the objects of one type whose ids are returned by the query, for example "SELECT id FROM person WHERE name = ?".
+     * Rows are fetched from a server-side cursor findFetchSize rows (see PostgresPersistenceManager) at a time and hydrated only as the stream is consumed,
+     * so large scans do not hold the whole result on the heap. This needs the connection to be in a transaction (auto-commit off).
+     * <p>
+     * Objects already in the identity map are returned as they are. New ones are registered as they are read, like any other read.
+     * The stream must be closed, for example with try-with-resources.
+     */
+    public <T extends PersistenceCapable> Stream<T> find(String sql, Class interfaceClass, PostgresContext context, Object... parameters) {
+        PostgresAbstractMapper mapper = mappers.get(interfaceClass);
+        if (mapper == null) {
+            throw new IllegalArgumentException("No mapper registered for class: " + interfaceClass.getName());
+        }
+
+        // Each fetch of new objects is registered, then has its references loaded in one batch, before the stream returns any of it.
+        return mapper.find(sql, parameters, manager.getFindFetchSize(), context, this::lookup, hydrated -> {
+                    lock.lock();
+                    try {
+                        for (PersistenceCapable object : hydrated) {
+                            identityMap.put(object, interfaceClass);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    mapper.loadReferences(hydrated, context);
+                })
+                .map(object -> (T) object);
+    }
+
+    /**
+     * Opens a pool of contexts on connections from the DataSource, for the async operations of this session.
+     * Its size and executor are those configured on the PostgresPersistenceManager.
+     */
+    public PostgresContextPool openContextPool(@NotNull DataSource dataSource) {
+        return new PostgresContextPool(this, dataSource, manager.getContextPoolSize(), manager.getAsyncExecutor());
+    }
+
+    /**
+     * Reads one object like read() does, on the pool's executor with a context of the pool, so that independent reads can overlap.
+     * The future completes with null if there is no such object. See the class comment for what may be done while it is pending.
+     */
+    public <T extends PersistenceCapable> CompletableFuture<T> readAsync(UUID id, Class interfaceClass, @NotNull PostgresContextPool pool) {
+        return CompletableFuture.supplyAsync(() -> pool.withContext(context -> (T) read(id, interfaceClass, context)), pool.getExecutor());
+    }
+
+    /**
+     * Reads many objects of one type like readAll() does, on the pool's executor with a context of the pool.
+     * Ids already in the identity map are still returned without a query; the others take one round trip, which may overlap with other async reads.
+     */
+    public <T extends PersistenceCapable> CompletableFuture<List<T>> readAllAsync(Collection<UUID> ids, Class interfaceClass, @NotNull PostgresContextPool pool) {
+        // Copied now, so the caller may reuse the collection while the read is pending.
+        List<UUID> requested = List.copyOf(ids);
+        return CompletableFuture.supplyAsync(() -> pool.withContext(context -> readAll(requested, interfaceClass, context)), pool.getExecutor());
+    }
+
+    /**
+     * Flushes like flushBatched() does, on the pool's executor, in a transaction of its own on one of the pool's connections, which is committed
+     * when the flush has been written. Objects with a version conflict are not written, are reported in the result and stay pending,
+     * as with flushBatched(); the others are committed.
+     * <p>
+     * The session is only brought up to date once the transaction has committed: until then the objects keep their versions and stay pending.
+     * If the flush or the commit fails, the transaction is rolled back, the future completes exceptionally, and everything is still pending
+     * as it was, so the flush can simply be retried.
+     * <p>
+     * Nothing but setters may use the session until the future has completed.
+     */
+    public CompletableFuture<FlushResult> flushAsync(@NotNull PostgresContextPool pool) {
+        return CompletableFuture.supplyAsync(() -> pool.withContext(this::flushInTransaction), pool.getExecutor());
+    }
+
+    private FlushResult flushInTransaction(PostgresContext context) {
+        Connection connection = context.getConnection();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                FlushResult result = writePending(context, true);
+                connection.commit();
+                applyFlush(result);
+                afterCommit();
+                return result;
+            } catch (RuntimeException | SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                failed();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to flush", e);
+        }
+    }
+
+    public PostgresAbstractMapper getMapper(Class theClass) {
+        return mappers.get(theClass);
+    }
+
+    public void dirty(@NotNull PersistenceCapable object) {
+        // Mark the object as dirty, meaning it has been modified and needs to be persisted.
+        // It is pinned so it cannot be evicted before it is flushed. If it was already evicted, the application still held it, so it is put back.
+        // Setters of VOLATILE and SNAPSHOT objects call this from any thread, so it takes the lock; see the class comment.
+        UUID id = object.getId();
+        lock.lock();
+        try {
+            if (!identityMap.containsKey(id)) {
+                identityMap.put(object, interfaceTypeOf(object));
+            }
+            identityMap.pin(id);
+            // A new object is written whole anyway, so it stays in persistentNew only.
+            if (!persistentNew.containsKey(id)) {
+                persistentDirty.put(id, object);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void upsertMeasured(PostgresAbstractMapper mapper, PersistenceCapable object, Class interfaceClass, PostgresContext context, PersistenceMetrics metrics) {
+        long start = System.nanoTime();
+        try {
+            mapper.upsert(object, context);
+        } catch (VersionConflictException e) {
+            metrics.versionConflicts(interfaceClass, 1);
+            throw e;
+        }
+        metrics.upsert(interfaceClass, 1, System.nanoTime() - start);
+    }
+
+    private void invalidateCached(UUID id) {
+        SecondLevelCache cache = manager.getSecondLevelCache();
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * Drops the SecondLevelCache snapshots of everything flush() and flushBatched() have written since the last call.
+     * Call it once the transaction they were written in has committed.
+     * <p>
+     * The snapshots are dropped before and after the writes as well, but until the transaction commits, other sessions still read the
+     * old rows, and one that does can put a snapshot of it back into the cache. Nothing newer is cached by then, so the cache cannot
+     * tell it is stale, and it would be served until its time-to-live ran out. flushAsync() calls this itself.
+     */
+    public void afterCommit() {
+        List<UUID> committed;
+        lock.lock();
+        try {
+            committed = new ArrayList<>(awaitingCommit);
+            awaitingCommit.clear();
+        } finally {
+            lock.unlock();
+        }
+        SecondLevelCache cache = manager.getSecondLevelCache();
+        if (cache != null) {
+            cache.invalidateAll(committed);
+        }
+    }
+
+    // Only needed for an object that was evicted while the application held it, for example by an LruIdentityMap.
+    private Class interfaceTypeOf(PersistenceCapable object) {
+        for (Class interfaceClass : mappers.keySet()) {
+            if (interfaceClass.isInstance(object)) {
+                return interfaceClass;
+            }
+        }
+        throw new IllegalArgumentException("No mapper registered for object of class: " + object.getClass().getName());
+    }
+
+    /**
+     * This method flushes all the new and dirty objects to the database.
+     * It should be called at the end of a transaction or when you want to persist all changes made to the objects.
+     * Each object is written on its own with the upsert method of its mapper; flushBatched() is the batched alternative.
+     * On successful conclusion, both the persistentNew and persistentDirty collections will be cleared.
+     * * Note that this method does not commit the transaction; it only writes them to the database but does not commit the transaction.
+     * That will normally happen at the end of a @Transactional method in the service layer or wherever the transaction management is handled.
+     * With a SecondLevelCache, call afterCommit() once it has committed.
+     * <p>
+     * A version conflict stops the flush with a VersionConflictException. The session is only brought up to date once every object has
+     * been written, so then, as with any other failure, nothing counts: every object is still pending with the version it had, and the
+     * transaction should be rolled back, since it holds the objects written before the conflict.
+     *
+     * @param context The database connection to use for flushing the changes.
+     * @throws SQLException If there is an error during the database operation.
+     */
+    public void flush(PostgresContext context) throws SQLException {
+        FlushResult result = writePending(context, false);
+        applyFlush(result);
+    }
+
+    // Takes an object that has just been written off the pending collections and unpins it.
+    // One that a setter changed again while it was being written stays dirty, and pinned, so the change goes out with the next flush.
+    private void written(UUID id) {
+        PersistenceCapable object = persistentNew.remove(id);
+        PersistenceCapable dirty = persistentDirty.remove(id);
+        if (object == null) {
+            object = dirty;
+        }
+        if (object instanceof AbstractPersistenceCapable pc && pc.writeCommitted()) {
+            persistentDirty.put(id, pc);
+        } else {
+            identityMap.unpin(id);
+        }
+    }
+
+    /**
+     * Batched alternative to flush().
+     * The new and dirty objects are grouped by interface class and each group is written by its mapper with JDBC batches,
+     * so the number of round trips depends on the number of types rather than the number of objects.
+     * Groups are written in mapper registration order.
+     * When a type has at least bulkLoadThreshold (see PostgresPersistenceManager) new objects, those are bulk-loaded with COPY instead of the batched upsert.
+     * <p>
+     * Objects that were written are removed from persistentNew and persistentDirty and unpinned in the identity map, unless they were changed
+     * again while they were being written. Objects with a version conflict are reported in the result and stay pending. As with flush(), the transaction is not committed,
+     * and afterCommit() should be called once it has been.
+     *
+     * @param context The database connection to use for flushing the changes.
+     * @return The per-object update counts and version conflicts.
+     */
+    public FlushResult flushBatched(PostgresContext context) {
+        FlushResult result = writePending(context, true);
+        // The caller commits, so the session is brought up to date now.
+        applyFlush(result);
+        return result;
+    }
+
+    /**
+     * Writes the new and dirty objects as flushBatched() describes, or one at a time as flush() does, without changing the session:
+     * the objects stay pending and keep their versions until applyFlush() is called with the result. If the write fails, everything
+     * stays pending as it was.
+     */
+    private FlushResult writePending(PostgresContext context, boolean batched) {
+
+        PersistenceMetrics metrics = manager.getMetrics();
+        long flushStart = System.nanoTime();
+
+        // The pending objects are grouped under the lock, and written outside it, so setters are only held up for the grouping.
+        Map<Class, List<PersistenceCapable>> newGroups = new HashMap<>();
+        Map<Class, List<PersistenceCapable>> dirtyGroups = new HashMap<>();
+        List<UUID> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            boolean noOverlap = Collections.disjoint(persistentNew.keySet(), persistentDirty.keySet());
+            assert noOverlap : "persistentNew and persistentDirty collections must not overlap. Please ensure that an object is either in persistentNew or persistentDirty, but not both.";
+
+            for (PersistenceCapable newObject : persistentNew.values()) {
+                newGroups.computeIfAbsent(identityMap.getInterfaceType(newObject.getId()), k -> new ArrayList<>()).add(newObject);
+            }
+            for (PersistenceCapable dirtyObject : persistentDirty.values()) {
+                dirtyGroups.computeIfAbsent(identityMap.getInterfaceType(dirtyObject.getId()), k -> new ArrayList<>()).add(dirtyObject);
+            }
+            pending.addAll(persistentNew.keySet());
+            pending.addAll(persistentDirty.keySet());
+        } finally {
+            lock.unlock();
+        }
+
+        if (!mappers.keySet().containsAll(newGroups.keySet()) || !mappers.keySet().containsAll(dirtyGroups.keySet())) {
+            throw new IllegalStateException("No mapper registered for some of the classes: " + newGroups.keySet() + " " + dirtyGroups.keySet());
+        }
+
+        // Snapshots of anything being written are dropped first, whether or not the write then succeeds, and again once it has been written.
+        SecondLevelCache cache = manager.getSecondLevelCache();
+        if (cache != null) {
+            cache.invalidateAll(pending);
+        }
+
+        FlushResult result = new FlushResult();
+        try {
+            for (Class interfaceClass : mappers.keySet()) {
+                List<PersistenceCapable> newGroup = newGroups.getOrDefault(interfaceClass, List.of());
+                List<PersistenceCapable> dirtyGroup = dirtyGroups.getOrDefault(interfaceClass, List.of());
+                if (newGroup.isEmpty() && dirtyGroup.isEmpty()) {
+                    continue;
+                }
+                var mapper = mappers.get(interfaceClass);
+
+                // flush() writes the objects one at a time, and stops at the first version conflict.
+                if (!batched) {
+                    for (PersistenceCapable object : newGroup) {
+                        upsertMeasured(mapper, object, interfaceClass, context, metrics);
+                        result.addUpdateCount(object.getId(), 1);
+                    }
+                    for (PersistenceCapable object : dirtyGroup) {
+                        upsertMeasured(mapper, object, interfaceClass, context, metrics);
+                        result.addUpdateCount(object.getId(), 1);
+                    }
+                    continue;
+                }
+
+                // Large sets of new objects go through COPY; small ones are cheaper as part of the normal batch.
+                if (newGroup.size() >= manager.getBulkLoadThreshold()) {
+                    long start = System.nanoTime();
+                    result.addAll(mapper.copyIn(newGroup, context));
+                    metrics.bulkLoad(interfaceClass, newGroup.size(), System.nanoTime() - start);
+                } else {
+                    dirtyGroup = new ArrayList<>(dirtyGroup);
+                    dirtyGroup.addAll(newGroup);
+                }
+                long start = System.nanoTime();
+                FlushResult groupResult = mapper.upsertAll(dirtyGroup, context);
+                if (!dirtyGroup.isEmpty()) {
+                    metrics.upsert(interfaceClass, dirtyGroup.size(), System.nanoTime() - start);
+                }
+                if (groupResult.hasVersionConflicts()) {
+                    metrics.versionConflicts(interfaceClass, groupResult.getVersionConflicts().size());
+                }
+                result.addAll(groupResult);
+            }
+        } catch (RuntimeException e) {
+            failed();
+            throw e;
+        }
+
+        if (cache != null) {
+            cache.invalidateAll(pending);
+        }
+
+        metrics.flush(result.getFlushedCount(), System.nanoTime() - flushStart);
+        return result;
+    }
+
+    // Brings the session up to date with a write that counts: the objects written get their new versions and are no longer pending.
+    private void applyFlush(FlushResult result) {
+        lock.lock();
+        try {
+            for (UUID id : result.getUpdateCounts().keySet()) {
+                if (!result.getVersionConflicts().contains(id)) {
+                    PersistenceCapable object = persistentNew.containsKey(id) ? persistentNew.get(id) : persistentDirty.get(id);
+                    ((AbstractPersistenceCapable) object).getMetaData().incrementVersion();
+                    written(id);
+                    awaitingCommit.add(id);
+                }
+            }
+            manager.getMetrics().identityMapSize(identityMap.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Nothing of a write that failed, or was rolled back, counts, so every pending object gets back the dirty fields the write took.
+    private void failed() {
+        lock.lock();
+        try {
+            for (PersistenceCapable object : persistentNew.values()) {
+                ((AbstractPersistenceCapable) object).writeFailed();
+            }
+            for (PersistenceCapable object : persistentDirty.values()) {
+                ((AbstractPersistenceCapable) object).writeFailed();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * Coalesces the point reads of concurrent sessions into batches, in the style of a DataLoader.
+ * <p>
+ * When a session's read() misses its identity map, it joins the open batch for the type, or opens one. The session that opened the batch
+ * waits for the window to pass, or for the batch to reach its maximum size, then reads all the ids with one = ANY(?) query on its own
+ * context and hands each waiting session the snapshot of its object. Every session materializes its own copy from the snapshot, as it
+ * would from the SecondLevelCache, so sessions still never share mutable objects, and the versions keep the optimistic locking intact.
+ * Under load, thousands of point reads a second become a few dozen queries, at the cost of up to one window of extra latency per read.
+ * <p>
+ * Only reads on connections in auto-commit mode are coalesced. Such a read sees whatever is committed when its statement runs,
+ * so reading it on another session's connection at the same moment gives the same result. A read inside a transaction may depend
+ * on the transaction's own writes or snapshot, so it always goes to its own connection.
+ * <p>
+ * The coalescer is thread-safe and is shared by all sessions of a manager, see PostgresPersistenceManager.setReadCoalescer().
+ */
+public final class ReadCoalescer {
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    // The batch each type is collecting, if any. A batch is removed when it is sealed, and the next read opens a new one.
+    private final Map<Class, Batch> open = new ConcurrentHashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong coalescedReads = new AtomicLong();
+
+    /**
+     * @param window       how long the first read of a batch waits for others to join it
+     * @param maxBatchSize the number of ids at which a batch is read without waiting for the rest of the window
+     */
+    public ReadCoalescer(Duration window, int maxBatchSize) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive, was " + window);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1, was " + maxBatchSize);
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    private final class Batch {
+        private final Class interfaceClass;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition full = lock.newCondition();
+        private final Map<UUID, CompletableFuture<SecondLevelCache.Snapshot>> waiters = new LinkedHashMap<>();
+        private boolean sealed;
+
+        // The opener's id is in the batch before anyone else can see it, so the batch always has the session that will read it.
+        Batch(Class interfaceClass, UUID openerId) {
+            this.interfaceClass = interfaceClass;
+            waiters.put(openerId, new CompletableFuture<>());
+        }
+
+        // Returns the future for the id, shared with any other session that asked for the same id, or null if the batch has been sealed.
+        CompletableFuture<SecondLevelCache.Snapshot> join(UUID id) {
+            lock.lock();
+            try {
+                if (sealed) {
+                    return null;
+                }
+                CompletableFuture<SecondLevelCache.Snapshot> future = waiters.computeIfAbsent(id, k -> new CompletableFuture<>());
+                if (waiters.size() >= maxBatchSize) {
+                    seal();
+                    full.signal();
+                }
+                return future;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called by the session that opened the batch. Returns once the window has passed or the batch is full; no more ids join after that.
+        void await() {
+            lock.lock();
+            try {
+                long remaining = windowNanos;
+                while (!sealed && waiters.size() < maxBatchSize && remaining > 0) {
+                    remaining = full.awaitNanos(remaining);
+                }
+                seal();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                seal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void seal() {
+            if (!sealed) {
+                sealed = true;
+                open.remove(interfaceClass, this);
+            }
+        }
+
+        void load(PostgresAbstractMapper mapper, PostgresContext context) {
+            try {
+                List<PersistenceCapable> loaded = mapper.readAll(waiters.keySet(), context);
+                Map<UUID, SecondLevelCache.Snapshot> snapshots = new HashMap<>();
+                for (PersistenceCapable object : loaded) {
+                    snapshots.put(object.getId(), mapper.snapshot(object, interfaceClass));
+                }
+                // Ids that do not exist complete with null, as read() returns null for them.
+                for (Map.Entry<UUID, CompletableFuture<SecondLevelCache.Snapshot>> waiter : waiters.entrySet()) {
+                    waiter.getValue().complete(snapshots.get(waiter.getKey()));
+                }
+            } catch (RuntimeException e) {
+                for (CompletableFuture<SecondLevelCache.Snapshot> waiter : waiters.values()) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one object as part of a batch and returns its snapshot, or null if there is no such object. Blocks until the batch has been read.
+     * Called by PostgresSession.read() after its identity map and the SecondLevelCache have missed, with a context in auto-commit mode.
+     */
+    SecondLevelCache.Snapshot read(UUID id, Class interfaceClass, PostgresAbstractMapper mapper, PostgresContext context) {
+        while (true) {
+            Batch batch = open.get(interfaceClass);
+            if (batch == null) {
+                Batch fresh = new Batch(interfaceClass, id);
+                if (open.putIfAbsent(interfaceClass, fresh) == null) {
+                    CompletableFuture<SecondLevelCache.Snapshot> future = fresh.waiters.get(id);
+                    fresh.await();
+                    batches.incrementAndGet();
+                    coalescedReads.addAndGet(fresh.waiters.size());
+                    fresh.load(mapper, context);
+                    return result(future);
+                }
+                // Another session opened one first; join that.
+                continue;
+            }
+            CompletableFuture<SecondLevelCache.Snapshot> future = batch.join(id);
+            if (future == null) {
+                // Sealed between looking it up and joining it; the next batch will take the id.
+                continue;
+            }
+            return result(future);
+        }
+    }
+
+    private static SecondLevelCache.Snapshot result(CompletableFuture<SecondLevelCache.Snapshot> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public Duration getWindow() {
+        return Duration.ofNanos(windowNanos);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    // The number of batches read so far.
+    public long getBatches() {
+        return batches.get();
+    }
+
+    // The number of distinct ids read in those batches. Divided by the batches, it gives how many point queries each batch saved.
+    public long getCoalescedReads() {
+        return coalescedReads.get();
+    }
+}
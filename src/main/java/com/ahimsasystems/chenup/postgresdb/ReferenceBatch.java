@@ -0,0 +1,53 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The EAGER entity references of a set of objects that were read together, such as a page of relationships, grouped by entity type.
+ * <p>
+ * Following each reference as its row is hydrated costs a query per reference, 1 + 2N for N relationships with two endpoints.
+ * Instead the generated mappers add the ids to a batch, the batch loads each type with one readAll(), which only queries the ids
+ * that are not in the identity map, and the mappers then wire the loaded entities in. Each type costs at most one = ANY(?) query.
+ */
+public final class ReferenceBatch {
+    private final Map<Class, Set<UUID>> ids = new LinkedHashMap<>();
+    private final Map<UUID, PersistenceCapable> loaded = new HashMap<>();
+
+    /** Adds a reference to load. Null ids, for references that are not set, are ignored. */
+    public void add(Class interfaceClass, UUID id) {
+        if (id != null) {
+            ids.computeIfAbsent(interfaceClass, type -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /** The loaded entity with this id, or null if the id is null or there is no such entity. */
+    public <T extends PersistenceCapable> T get(UUID id) {
+        return id != null ? (T) loaded.get(id) : null;
+    }
+
+    // One readAll() per entity type. Objects in the identity map are not queried again, which also ends the recursion for cyclic references.
+    void load(PostgresContext context) {
+        PostgresSession session = context.getSession();
+        for (Map.Entry<Class, Set<UUID>> entry : ids.entrySet()) {
+            List<PersistenceCapable> entities = session.readAll(entry.getValue(), entry.getKey(), context);
+            for (PersistenceCapable entity : entities) {
+                loaded.put(entity.getId(), entity);
+            }
+        }
+    }
+}
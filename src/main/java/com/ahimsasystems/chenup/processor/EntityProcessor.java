@@ -1,6 +1,7 @@
 package com.ahimsasystems.chenup.processor;
 
 import com.ahimsasystems.chenup.annotations.Entity;
+import com.ahimsasystems.chenup.annotations.Fetch;
 import com.ahimsasystems.chenup.annotations.Relationship;
 import com.ahimsasystems.chenup.processor.model.*;
 import freemarker.template.Configuration;
@@ -16,6 +17,7 @@ import javax.lang.model.element.*;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 import java.io.IOException;
@@ -33,6 +35,8 @@ public class EntityProcessor extends AbstractProcessor {
 
     private final Set<EntityModel> entityModels = new java.util.HashSet<>();
     private final Set<RelationshipModel> relationshipModels = new java.util.HashSet<>();
+    // Records used as value types, by fully qualified name. Filled while the mappers are generated.
+    private final Map<String, RecordModel> recordModels = new LinkedHashMap<>();
     private Elements elementUtils;
     // Index for quick lookup by name. will be populated after processing all entities.
     private Map<String, EntityModel> entityTypeNameIndex = entityModels.stream()
@@ -63,6 +67,8 @@ public class EntityProcessor extends AbstractProcessor {
 
                 generateMappers(relationshipModels);
 
+                generateCodecs();
+
 
 //                for (RelationshipModel relationshipModel : relationshipModels) {
 //                    System.out.println("Generating code for relationship: " + relationshipModel.getName());
@@ -184,10 +190,12 @@ public class EntityProcessor extends AbstractProcessor {
 
 
         Template mapperTemplate = cfg.getTemplate("mapper.ftl");
+        // The FoundationDB mapper of each type is generated from the same model.
+        Template fdbMapperTemplate = cfg.getTemplate("fdb-mapper.ftl");
 
 
         for (MutableElementModel mutableElementModel : models) {
-            System.out.println("Generating mapper for: " + mutableElementModel.getName());
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Generating mapper for: " + mutableElementModel.getName());
 
 
             Map<String, Object> mapperModel = new HashMap<>();
@@ -219,15 +227,16 @@ public class EntityProcessor extends AbstractProcessor {
                 fieldModel.put("sqlName", toSnakeCase(field.getName()));
                 fieldModel.put("jdbcType", field.getType());
 
-                // TODO: Shouldn't hard code this. But not sure how to build this dynamically.
+                // Any record type is a value type, mapped to a composite type named after the record in snake case.
+                // Each one gets a generated codec, which the mapper uses to convert it.
                 fieldModel.put("udt", false);
                 fieldModel.put("udtType", "NotUDT");
-                System.out.println("!!!!!!field.getType() = " + field.getType());
-                if (field.getType().equals("com.example.PersonName")) {
+                TypeElement fieldType = elementUtils.getTypeElement(field.getType());
+                if (fieldType != null && fieldType.getKind() == ElementKind.RECORD) {
+                    RecordModel recordModel = recordModel(fieldType);
                     fieldModel.put("udt", true);
-                    fieldModel.put("udtType", "person_name");
-                } else {
-                    fieldModel.put("udt", false);
+                    fieldModel.put("udtType", recordModel.getUdtType());
+                    fieldModel.put("codec", recordModel.getCodecFullName());
                 }
 
                 // TODO: Shouldn't hard code this. This should be easy to build dynamically.
@@ -242,6 +251,8 @@ public class EntityProcessor extends AbstractProcessor {
                         break;
                     }
                 }
+                // Entity references are read and written by their id alone, see LazyReference. EAGER ones are then loaded in batches.
+                fieldModel.put("eager", (Boolean) fieldModel.get("entity") && isEager(mutableElementModel, field));
 
 //                if (field.getType().equals("com.example.Person") || field.getType().equals("com.example.Organization")) {
 //                    fieldModel.put("udt", true);
@@ -255,6 +266,17 @@ public class EntityProcessor extends AbstractProcessor {
 
 
             mapperModel.put("fields", fieldModels);
+            mapperModel.put("compositeCodecs", fieldModels.stream()
+                    .filter(fieldModel -> fieldModel.containsKey("codec"))
+                    .map(fieldModel -> fieldModel.get("codec"))
+                    .distinct()
+                    .toList());
+            mapperModel.put("references", fieldModels.stream()
+                    .filter(fieldModel -> (Boolean) fieldModel.get("entity"))
+                    .toList());
+            mapperModel.put("eagerReferences", fieldModels.stream()
+                    .filter(fieldModel -> (Boolean) fieldModel.get("eager"))
+                    .toList());
 
             JavaFileObject file = processingEnv.getFiler()
                     .createSourceFile(mutableElementModel.getPackageName() + "." + mutableElementModel.getName() + "Mapper");
@@ -262,6 +284,13 @@ public class EntityProcessor extends AbstractProcessor {
             try (Writer writer = file.openWriter()) {
                 mapperTemplate.process(mapperModel, writer);
             }
+
+            JavaFileObject fdbFile = processingEnv.getFiler()
+                    .createSourceFile(mutableElementModel.getPackageName() + "." + mutableElementModel.getName() + "FdbMapper");
+
+            try (Writer writer = fdbFile.openWriter()) {
+                fdbMapperTemplate.process(mapperModel, writer);
+            }
         }
 
         return mapperTemplate;
@@ -286,7 +315,7 @@ public class EntityProcessor extends AbstractProcessor {
         // Loop over all models and generate code for each one.
         // Currently doing the same code generation for both EntityModel and RelationshipModel.
         for (MutableElementModel mutableElementModel : models) {
-            System.out.println("Generating code for entity: " + mutableElementModel.getName());
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Generating code for entity: " + mutableElementModel.getName());
 
 
             Map<String, Object> model = new HashMap<>();
@@ -294,9 +323,10 @@ public class EntityProcessor extends AbstractProcessor {
             model.put("className", mutableElementModel.getName() + "Impl");
 
             model.put("interfaceName", mutableElementModel.getName());
+            model.put("accessors", mutableElementModel.getAccessorStrategy());
 
 
-            List<Map<String, String>> fields = new ArrayList<>();
+            List<Map<String, Object>> fields = new ArrayList<>();
 
 
             for (Map.Entry<String, FieldModel> entry : mutableElementModel.getFields().entrySet()) {
@@ -316,7 +346,15 @@ public class EntityProcessor extends AbstractProcessor {
                     continue;
                 }
 
-                fields.add(Map.of("name", field.getName(), "type", field.getType()));
+                // An entity reference is stored as a LazyReference, which is what a SNAPSHOT State record holds for it.
+                // The default value is the initial value of the field in a SNAPSHOT State record.
+                boolean reference = isEntityReference(field);
+                fields.add(Map.of(
+                        "name", field.getName(),
+                        "type", field.getType(),
+                        "reference", reference,
+                        "storedType", reference ? "com.ahimsasystems.chenup.core.LazyReference<" + field.getType() + ">" : field.getType(),
+                        "defaultValue", defaultValue(field.getType())));
             }
 
 //                fields.add(Map.of("name", "name", "type", "java.lang.String"));
@@ -336,12 +374,35 @@ public class EntityProcessor extends AbstractProcessor {
 //                            entityModel.getPackageName() + "." + entityModel.getName() + "Impl"
 //                    ).openWriter());
 
-
-            System.out.println("template = " + template.toString());
         }
         return template;
     }
 
+    private boolean isEntityReference(FieldModel field) {
+        return entityModels.stream().anyMatch(entityModel -> entityModel.getFullName().equals(field.getType()));
+    }
+
+    // Whether an entity reference is loaded with the object, rather than on first access.
+    private boolean isEager(MutableElementModel model, FieldModel field) {
+        String fetch = field.getFetch() != null ? field.getFetch() : model.getDefaultFetch();
+        return fetch.equals("EAGER");
+    }
+
+    // The value a field of the given type has before it is set, as Java source.
+    private static String defaultValue(String type) {
+        return switch (type) {
+            case "boolean" -> "false";
+            case "char" -> "'\\0'";
+            case "byte" -> "(byte) 0";
+            case "short" -> "(short) 0";
+            case "int" -> "0";
+            case "long" -> "0L";
+            case "float" -> "0.0f";
+            case "double" -> "0.0";
+            default -> "null";
+        };
+    }
+
     private void buildModel(Element e, ModelType modelType) {
         if (e.getKind() != ElementKind.INTERFACE) {
             return;
@@ -360,6 +421,9 @@ public class EntityProcessor extends AbstractProcessor {
             var fieldMap = new java.util.HashMap<String, FieldModel>();
             var relationshipEntities = new java.util.HashMap<String, EntityModel>();
 
+            // The @Fetch overrides, by field, from either accessor.
+            var fetchOverrides = new java.util.HashMap<String, String>();
+
             Set<ExecutableElement> allMethods = new LinkedHashSet<>();
             collectAllInterfaceMethods(interfaceElement, elementUtils, typeUtils, allMethods);
 
@@ -370,6 +434,11 @@ public class EntityProcessor extends AbstractProcessor {
                 String name = method.getSimpleName().toString();
                 String returnType = method.getReturnType().toString();
 
+                Fetch fetch = method.getAnnotation(Fetch.class);
+                if (fetch != null && name.length() > 3 && (name.startsWith("get") || name.startsWith("set"))) {
+                    fetchOverrides.put(decapitalize(name.substring(3)), fetch.value().name());
+                }
+
                 if (name.startsWith("get") && method.getParameters().isEmpty()) {
 
                     String memberName = decapitalize(name.substring(3));
@@ -416,8 +485,15 @@ public class EntityProcessor extends AbstractProcessor {
             }
 
 
+            fetchOverrides.forEach((field, fetch) -> {
+                if (fieldMap.containsKey(field)) {
+                    fieldMap.get(field).setFetch(fetch);
+                }
+            });
+
             if (modelType == ModelType.ENTITY) {
                 var entityModel = new EntityModel(packageName, interfaceName, fieldMap);
+                entityModel.setAccessorStrategy(interfaceElement.getAnnotation(Entity.class).accessors().name());
                 entityModels.add(entityModel);
 
             } else if (modelType == ModelType.RELATIONSHIP) {
@@ -427,10 +503,12 @@ public class EntityProcessor extends AbstractProcessor {
                         fieldMap,
                         relationshipEntities
                 );
+                relationshipModel.setAccessorStrategy(interfaceElement.getAnnotation(Relationship.class).accessors().name());
+                relationshipModel.setDefaultFetch(interfaceElement.getAnnotation(Relationship.class).fetch().name());
                 relationshipModels.add(relationshipModel);
 
             } else {
-                System.err.println("Unknown annotation type: " + modelType);
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unknown annotation type: " + modelType, e);
             }
 
 
@@ -457,6 +535,95 @@ public class EntityProcessor extends AbstractProcessor {
         }
     }
 
+    /**
+     * Returns the model of a record used as a value type, building it, and the models of any records nested in it, the first time the record is seen.
+     * Codecs are generated once per record, after all the mappers, however many fields use it.
+     */
+    private RecordModel recordModel(TypeElement recordElement) {
+        String recordType = recordElement.getQualifiedName().toString();
+        RecordModel existing = recordModels.get(recordType);
+        if (existing != null) {
+            return existing;
+        }
+
+        String packageName = elementUtils.getPackageOf(recordElement).getQualifiedName().toString();
+        String simpleName = recordElement.getSimpleName().toString();
+        RecordModel recordModel = new RecordModel(packageName, recordType, simpleName + "PgCodec", toSnakeCase(simpleName));
+        // Registered before the components are examined, so a record that refers to itself does not recurse forever.
+        recordModels.put(recordType, recordModel);
+
+        for (RecordComponentElement component : recordElement.getRecordComponents()) {
+            TypeMirror type = component.asType();
+            Map<String, Object> componentModel = new HashMap<>();
+            componentModel.put("name", component.getSimpleName().toString());
+            componentModel.put("type", type.toString());
+            componentModel.put("primitive", type.getKind().isPrimitive());
+
+            // The kind names the PgCompositeReader and PgCompositeWriter methods for the type, e.g. readInt and writeInt.
+            String kind;
+            switch (type.toString()) {
+                case "java.lang.String" -> kind = "String";
+                case "int", "java.lang.Integer" -> kind = "Int";
+                case "long", "java.lang.Long" -> kind = "Long";
+                case "short", "java.lang.Short" -> kind = "Short";
+                case "double", "java.lang.Double" -> kind = "Double";
+                case "float", "java.lang.Float" -> kind = "Float";
+                case "boolean", "java.lang.Boolean" -> kind = "Boolean";
+                case "java.math.BigDecimal" -> kind = "BigDecimal";
+                case "java.util.UUID" -> kind = "UUID";
+                case "java.time.LocalDate" -> kind = "LocalDate";
+                case "java.time.LocalTime" -> kind = "LocalTime";
+                case "java.time.LocalDateTime" -> kind = "LocalDateTime";
+                case "java.time.OffsetDateTime" -> kind = "OffsetDateTime";
+                case "java.time.Instant" -> kind = "Instant";
+                default -> {
+                    kind = "Composite";
+                    TypeElement componentType = elementUtils.getTypeElement(type.toString());
+                    if (componentType != null && componentType.getKind() == ElementKind.RECORD) {
+                        componentModel.put("codec", recordModel(componentType).getCodecFullName());
+                    } else {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                "Record component type " + type + " is not supported in a composite type", component);
+                    }
+                }
+            }
+            componentModel.put("kind", kind);
+            recordModel.getComponents().add(componentModel);
+        }
+        return recordModel;
+    }
+
+    private void generateCodecs() throws IOException, TemplateException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setClassForTemplateLoading(getClass(), "/templates");
+        cfg.setDefaultEncoding("UTF-8");
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        cfg.setLogTemplateExceptions(false);
+        cfg.setWrapUncheckedExceptions(true);
+
+        Template codecTemplate = cfg.getTemplate("codec.ftl");
+
+        for (RecordModel recordModel : recordModels.values()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Generating codec for: " + recordModel.getRecordType());
+
+            Map<String, Object> codecModel = new HashMap<>();
+            codecModel.put("packageName", recordModel.getPackageName());
+            codecModel.put("recordType", recordModel.getRecordType());
+            codecModel.put("codecName", recordModel.getCodecName());
+            codecModel.put("udtType", recordModel.getUdtType());
+            codecModel.put("components", recordModel.getComponents());
+            codecModel.put("nestedCodecs", recordModel.getComponents().stream()
+                    .filter(component -> component.containsKey("codec"))
+                    .map(component -> component.get("codec"))
+                    .toList());
+
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(recordModel.getCodecFullName());
+            try (Writer writer = file.openWriter()) {
+                codecTemplate.process(codecModel, writer);
+            }
+        }
+    }
+
     public static String toSnakeCase(String input) {
         return input.replaceAll("([a-z])([A-Z]+)", "$1_$2")
                 .replaceAll("([A-Z])([A-Z][a-z])", "$1_$2")
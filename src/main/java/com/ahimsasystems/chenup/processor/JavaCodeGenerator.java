@@ -2,6 +2,7 @@ package com.ahimsasystems.chenup.processor;
 
 import com.ahimsasystems.chenup.processor.model.EntityModel;
 import com.ahimsasystems.chenup.processor.model.FieldModel;
+import com.ahimsasystems.chenup.processor.model.MutableElementModel;
 import com.ahimsasystems.chenup.processor.model.RelationshipModel;
 import com.ahimsasystems.chenup.processor.template.Template;
 
@@ -10,6 +11,9 @@ import javax.lang.model.util.Types;
 import javax.tools.JavaFileObject;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,8 +44,12 @@ public class JavaCodeGenerator {
             )));
 
 
+            // The index of each generated field is its bit in the dirty-field mask.
+            int index = 0;
             for (FieldModel field : entityModel.getFields().values()) {
-                generateCode(field, writer);
+                if (generateCode(field, index, writer)) {
+                    index++;
+                }
             }
 
             writer.write(entityFooterTemplateString);
@@ -49,19 +57,20 @@ public class JavaCodeGenerator {
     }
 
 
-    private void generateCode(FieldModel fieldModel, Writer writer) throws IOException {
+    private boolean generateCode(FieldModel fieldModel, int index, Writer writer) throws IOException {
 
 
         String fieldSource = fieldTemplate.render(Map.of(
                 "type", fieldModel.getType(),
                 "name", fieldModel.getName(),
-                "capName", capitalize(fieldModel.getName())
+                "capName", capitalize(fieldModel.getName()),
+                "index", String.valueOf(index)
         ));
 
         // Skip the fields with built-in implementations.
         switch (fieldModel.getName()) {
             case "id", "currentTime", "clock" -> {
-                return;
+                return false;
             }
         }
 
@@ -69,13 +78,13 @@ public class JavaCodeGenerator {
         // ToDo: Convince yourself that this is correct.
         // I suspect it is, if either or both are overriden, then this is probably a computed field of some kind, and we don't want to generate the default code for it.
         if (fieldModel.getHasDefaultReader() || fieldModel.getHasDefaultWriter()) {
-            return;
+            return false;
         }
         
 
 
         writer.write(fieldSource);
-
+        return true;
 
     }
 
@@ -101,8 +110,11 @@ public class JavaCodeGenerator {
             )));
 
 
+            int index = 0;
             for (FieldModel field : relationshipModel.getFields().values()) {
-                generateCode(field, writer);
+                if (generateCode(field, index, writer)) {
+                    index++;
+                }
             }
 
             for (EntityModel entity : relationshipModel.getEntities().values()) {
@@ -112,7 +124,8 @@ public class JavaCodeGenerator {
                         "type", entity.getName() ,
 
                         "name", decapitalize(entity.getName()),
-                        "capName", capitalize(decapitalize(entity.getName()))
+                        "capName", capitalize(decapitalize(entity.getName())),
+                        "index", String.valueOf(index++)
                 )));
             }
 
@@ -143,7 +156,7 @@ public class JavaCodeGenerator {
                 
                 synchronized public void set$(capName)($(type) $(name)) {
                     this.$(name) = $(name);
-                    getPersistenceManager().dirty(this);
+                    markDirty($(index));
                 }
                 """;
 
@@ -151,7 +164,7 @@ public class JavaCodeGenerator {
     String entityHeaderTemplateString = """
                 package $(packageName);
                 
-                public class $(name)Impl extends com.ahimsasystems.chenup.postgresdb.PostgresAbstractPersistenceCapable implements $(name)  {
+                public class $(name)Impl extends com.ahimsasystems.chenup.core.AbstractPersistenceCapable implements $(name)  {
                 """;
 
     String entityFooterTemplateString = """
@@ -168,62 +181,55 @@ public class JavaCodeGenerator {
 
     }
 
-    public void generatePersistenceInitializer(Set<EntityModel> entityModels, Set<RelationshipModel> relationshipModels,ProcessingEnvironment processingEnv) throws IOException {
-
-        // Hard coded for now, needs to be templatized.
-
-
-        JavaFileObject file = processingEnv.getFiler().createSourceFile("com.example.MyPersistenceInitializer");
-        try (Writer writer = file.openWriter()) {
-            writer.write("""
-                  package com.example;
-
-// © 2025 Stephen W. Strom
-// Licensed under the MIT License. See LICENSE file in the project root for details.
-
-import com.ahimsasystems.chenup.core.PersistenceManager;
-import jakarta.enterprise.context.ApplicationScoped;
-import io.quarkus.runtime.annotations.RegisterForReflection;
-import jakarta.enterprise.context.RequestScoped;
-
+    String persistenceInitializerTemplateString = """
+                package com.example;
 
+                // © 2025 Stephen W. Strom
+                // Licensed under the MIT License. See LICENSE file in the project root for details.
 
-import java.util.function.Supplier;
+                import com.ahimsasystems.chenup.core.PersistenceRegistry;
+                import io.quarkus.runtime.annotations.RegisterForReflection;
+                import jakarta.enterprise.context.RequestScoped;
 
                 // This class will be generated so that its dependence on generated code wiill not cause compile errors.
-@RequestScoped
-@RegisterForReflection
-public class MyPersistenceInitializer implements com.ahimsasystems.chenup.core.PersistenceInitializer {
-    public void registerAll(PersistenceManager pm) {
-
-            // Register all classes that need to be persisted.
-            // For example:
-            pm.registerType(Person.class, PersonImpl::new);
-            pm.registerMapper(Person.class, PersonMapper::new);
-            
-            pm.registerType(Organization.class, OrganizationImpl::new);
-            pm.registerMapper(Organization.class, OrganizationMapper::new);
-            
-            pm.registerType(Employment.class, EmploymentImpl::new);
-            pm.registerMapper(Employment.class, EmploymentMapper::new);
-
-
-            // Add more registrations as needed.
-            // pm.register(AnotherClass.class, AnotherClass::new);
-
-   // etc.
-
-    }
-}
+                // Each mapper is constructed exactly once, when it is registered, and shared from then on.
+                // Entities are registered before relationships, which is also the order batched flushes write them in.
+                @RequestScoped
+                @RegisterForReflection
+                public class MyPersistenceInitializer implements com.ahimsasystems.chenup.core.PersistenceInitializer {
+                    public void registerAll(PersistenceRegistry pm) {
+                $(registrations)
+                    }
+                }
+                """;
 
+    String registrationTemplateString = """
+                        pm.registerType($(interfaceName).class, $(interfaceName)Impl::new);
+                        pm.registerMapper($(interfaceName).class, $(interfaceName)Mapper::new);
+                        pm.registerFdbMapper($(interfaceName).class, $(interfaceName)FdbMapper::new);
 
+                """;
 
+    public void generatePersistenceInitializer(Set<EntityModel> entityModels, Set<RelationshipModel> relationshipModels,ProcessingEnvironment processingEnv) throws IOException {
 
+        // The class name is still fixed, since applications look it up by name, but the registrations are generated from the models.
+        Template initializerTemplate = new Template();
+        initializerTemplate.compile(persistenceInitializerTemplateString);
+        Template registrationTemplate = new Template();
+        registrationTemplate.compile(registrationTemplateString);
 
+        List<MutableElementModel> models = new ArrayList<>();
+        entityModels.stream().sorted(Comparator.comparing(MutableElementModel::getFullName)).forEach(models::add);
+        relationshipModels.stream().sorted(Comparator.comparing(MutableElementModel::getFullName)).forEach(models::add);
 
+        StringBuilder registrations = new StringBuilder();
+        for (MutableElementModel model : models) {
+            registrations.append(registrationTemplate.render(Map.of("interfaceName", model.getFullName())));
+        }
 
-                            """
-            );
-    }
+        JavaFileObject file = processingEnv.getFiler().createSourceFile("com.example.MyPersistenceInitializer");
+        try (Writer writer = file.openWriter()) {
+            writer.write(initializerTemplate.render(Map.of("registrations", registrations.toString())));
+        }
     }
-}
\ No newline at end of file
+}
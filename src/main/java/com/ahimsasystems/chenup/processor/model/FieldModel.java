@@ -6,6 +6,8 @@ public class FieldModel {
     private Access access;
     private boolean hasDefaultReader;
     private boolean hasDefaultWriter;
+    // The FetchType from a @Fetch on the getter or setter, for entity references. Null means the model's default fetch type.
+    private String fetch;
 
     public FieldModel(String name, String type, Access access, boolean hasDefaultReader, boolean hasDefaultWriter) {
         this.name = name;
@@ -55,6 +57,14 @@ public class FieldModel {
         this.hasDefaultWriter = hasDefaultWriter;
     }
 
+    public String getFetch() {
+        return fetch;
+    }
+
+    public void setFetch(String fetch) {
+        this.fetch = fetch;
+    }
+
 //    @Override
 //    public String toString() {
 //        return "FieldModel{" +
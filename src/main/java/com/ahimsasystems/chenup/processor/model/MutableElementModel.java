@@ -8,6 +8,10 @@ public class MutableElementModel {
     private String packageName;
     private String name;
     private Map<String, FieldModel> fields;
+    // The name of the AccessorStrategy from the annotation.
+    private String accessorStrategy = "SYNCHRONIZED";
+    // The name of the FetchType of entity references without a @Fetch of their own.
+    private String defaultFetch = "LAZY";
 
     public MutableElementModel(String packageName, String name, Map<String, FieldModel> fields) {
         this.packageName = packageName;
@@ -39,6 +43,22 @@ public class MutableElementModel {
         this.fields = fields;
     }
 
+    public String getAccessorStrategy() {
+        return accessorStrategy;
+    }
+
+    public void setAccessorStrategy(String accessorStrategy) {
+        this.accessorStrategy = accessorStrategy;
+    }
+
+    public String getDefaultFetch() {
+        return defaultFetch;
+    }
+
+    public void setDefaultFetch(String defaultFetch) {
+        this.defaultFetch = defaultFetch;
+    }
+
     public String getFullName() {
         return packageName + "." + name;
     }
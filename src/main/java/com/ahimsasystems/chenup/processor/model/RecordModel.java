@@ -0,0 +1,53 @@
+package com.ahimsasystems.chenup.processor.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * A Java record used as a value type, mapped to a Postgres composite type (UDT).
+ * The processor generates one codec class per record model, including for records nested inside other records.
+ * Each component is a map with name, type, primitive, kind and, for nested records, codec, ready for codec.ftl.
+ */
+public class RecordModel {
+    private final String packageName;
+    private final String recordType;
+    private final String codecName;
+    private final String udtType;
+    private final List<Map<String, Object>> components = new ArrayList<>();
+
+    public RecordModel(String packageName, String recordType, String codecName, String udtType) {
+        this.packageName = packageName;
+        this.recordType = recordType;
+        this.codecName = codecName;
+        this.udtType = udtType;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /** The fully qualified name of the record. */
+    public String getRecordType() {
+        return recordType;
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public String getCodecFullName() {
+        return packageName.isEmpty() ? codecName : packageName + "." + codecName;
+    }
+
+    public String getUdtType() {
+        return udtType;
+    }
+
+    public List<Map<String, Object>> getComponents() {
+        return components;
+    }
+}
@@ -0,0 +1,157 @@
+package ${packageName};
+
+import com.ahimsasystems.chenup.postgresdb.PgBinaryReader;
+import com.ahimsasystems.chenup.postgresdb.PgBinaryWriter;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeReader;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeType;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeValue;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeWriter;
+import com.ahimsasystems.chenup.postgresdb.PgTypes;
+import org.postgresql.util.PGobject;
+
+import java.util.List;
+
+// Generated by chenup. Converts ${recordType} to and from the text form of the ${udtType} composite type.
+// Each component is read from and written to the literal in place with typed code, so there is no reflection and no intermediate strings.
+// The binary form, which the driver uses once PgTypes has turned on binary transfer for the type, is converted the same way.
+public final class ${codecName} {
+
+    public static final PgCompositeType TYPE = new PgCompositeType("${udtType}", Value.class,
+            List.of(<#list components as component>"${component.kind}"<#if !component?is_last>, </#if></#list>),
+            List.of(<#list nestedCodecs as nestedCodec>${nestedCodec}.TYPE<#if !nestedCodec?is_last>, </#if></#list>));
+
+    private ${codecName}() {
+    }
+
+    /** Gets the record from what ResultSet.getObject() returned for the column: a Value if the type was registered with the driver, else a PGobject. */
+    public static ${recordType} fromObject(Object value) {
+        if (value instanceof Value compositeValue) {
+            return compositeValue.getRecord();
+        } else if (value instanceof PGobject pgobject) {
+            return pgobject.getValue() != null ? decode(pgobject.getValue()) : null;
+        }
+        return value != null ? decode(value.toString()) : null;
+    }
+
+    /** Wraps the record for PreparedStatement.setObject(). */
+    public static Value toObject(${recordType} value, PgTypes types) {
+        return new Value(value, types);
+    }
+
+    public static ${recordType} decode(CharSequence text) {
+        PgCompositeReader in = new PgCompositeReader(text);
+
+<#list components as component>
+        in.next();
+    <#if component.codec??>
+        ${component.type} ${component.name} = in.isNull() ? null : ${component.codec}.decode(in.field());
+    <#elseif component.primitive>
+        ${component.type} ${component.name} = in.requireNonNull("${recordType}.${component.name}").read${component.kind}();
+    <#else>
+        ${component.type} ${component.name} = in.isNull() ? null : in.read${component.kind}();
+    </#if>
+</#list>
+        in.end();
+
+        return new ${recordType}(<#list components as component>${component.name}<#if !component?is_last>, </#if></#list>);
+    }
+
+    /** Encodes the value with the writer of the current thread, so the only allocation is the returned literal. */
+    public static String encode(${recordType} value) {
+        PgCompositeWriter out = PgCompositeWriter.local().begin();
+        encodeFields(value, out);
+        return out.finish();
+    }
+
+    /** Writes the fields of the value into a composite the caller has begun, which is how nested records are written. */
+    public static void encodeFields(${recordType} value, PgCompositeWriter out) {
+<#list components as component>
+    <#if component.primitive>
+        out.write${component.kind}(value.${component.name}());
+    <#else>
+        if (value.${component.name}() == null) {
+            out.writeNull();
+        } else {
+        <#if component.codec??>
+            out.beginComposite();
+            ${component.codec}.encodeFields(value.${component.name}(), out);
+            out.endComposite();
+        <#else>
+            out.write${component.kind}(value.${component.name}());
+        </#if>
+        }
+    </#if>
+</#list>
+    }
+
+    public static ${recordType} decodeBinary(PgBinaryReader in) {
+        in.beginComposite(${components?size}, "${udtType}");
+
+<#list components as component>
+        in.next();
+    <#if component.codec??>
+        ${component.type} ${component.name} = in.isNull() ? null : ${component.codec}.decodeBinary(in.enter());
+    <#elseif component.primitive>
+        ${component.type} ${component.name} = in.requireNonNull("${recordType}.${component.name}").read${component.kind}();
+    <#else>
+        ${component.type} ${component.name} = in.isNull() ? null : in.read${component.kind}();
+    </#if>
+</#list>
+
+        return new ${recordType}(<#list components as component>${component.name}<#if !component?is_last>, </#if></#list>);
+    }
+
+    /** Writes the value in binary, at the top level or inside a field the caller has begun. */
+    public static void encodeBinary(${recordType} value, PgBinaryWriter out) {
+        int[] oids = out.attributeOids("${udtType}");
+        out.writeFieldCount(${components?size});
+<#list components as component>
+    <#if component.primitive>
+        out.write${component.kind}(oids[${component?index}], value.${component.name}());
+    <#else>
+        if (value.${component.name}() == null) {
+            out.writeNull(oids[${component?index}]);
+        } else {
+        <#if component.codec??>
+            out.beginField(oids[${component?index}]);
+            ${component.codec}.encodeBinary(value.${component.name}(), out);
+            out.endField();
+        <#else>
+            out.write${component.kind}(oids[${component?index}], value.${component.name}());
+        </#if>
+        }
+    </#if>
+</#list>
+    }
+
+    /** The ${udtType} type as the JDBC driver sees it. PgTypes registers this class with the driver, which then returns it from getObject(). */
+    public static final class Value extends PgCompositeValue<${recordType}> {
+
+        public Value() {
+        }
+
+        public Value(${recordType} value, PgTypes types) {
+            super("${udtType}", value, types);
+        }
+
+        @Override
+        protected ${recordType} decode(String text) {
+            return ${codecName}.decode(text);
+        }
+
+        @Override
+        protected ${recordType} decodeBinary(PgBinaryReader in) {
+            return ${codecName}.decodeBinary(in);
+        }
+
+        @Override
+        protected String encode(${recordType} record) {
+            return ${codecName}.encode(record);
+        }
+
+        @Override
+        protected void encodeBinary(${recordType} record, PgBinaryWriter out) {
+            ${codecName}.encodeBinary(record, out);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ${packageName};
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.EntityReference;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.foundationdb.FdbAbstractMapper;
+import com.ahimsasystems.chenup.foundationdb.FdbContext;
+import com.ahimsasystems.chenup.foundationdb.FdbValues;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+<#-- The FoundationDB mapper of the type. It uses the same model as mapper.ftl and converts the same fields, in the same order. -->
+public class ${entityName}FdbMapper extends FdbAbstractMapper {
+
+    // The fields in the order they are stored in the value, after the version and the deleted flag.
+    private static final List<String> FIELDS = List.of(<#list fields as field>"${field.name}"<#if !field?is_last>, </#if></#list>);
+
+    // The fields that refer to entities. Each has an index, which readReferencing() reads.
+    private static final List<EntityReference> REFERENCES = List.of(<#list references as reference>new EntityReference("${reference.name}", "${reference.sqlName}", ${reference.jdbcType}.class)<#if !reference?is_last>, </#if></#list>);
+
+    private static final List<EntityReference> EAGER_REFERENCES = List.of(<#list eagerReferences as reference>new EntityReference("${reference.name}", "${reference.sqlName}", ${reference.jdbcType}.class)<#if !reference?is_last>, </#if></#list>);
+
+    // Mappers are stateless singletons, registered once by the generated PersistenceInitializer.
+    public ${entityName}FdbMapper() {}
+
+    @Override
+    protected String tableName() {
+        return "${tableName}";
+    }
+
+    @Override
+    protected List<String> fieldNames() {
+        return FIELDS;
+    }
+
+    @Override
+    public List<EntityReference> references() {
+        return REFERENCES;
+    }
+
+    @Override
+    protected List<EntityReference> eagerReferences() {
+        return EAGER_REFERENCES;
+    }
+
+    @Override
+    protected List<Object> encodeFields(PersistenceCapable obj) {
+        var typedObj = (${entityName}Impl) obj;
+        // Arrays.asList, since fields may be null.
+        return Arrays.asList(
+<#list fields as field>
+    <#if field.entity?? && field.entity>
+                typedObj.get${field.name?cap_first}Id()<#if !field?is_last>,</#if>
+    <#else>
+                FdbValues.encode(typedObj.get${field.name?cap_first}())<#if !field?is_last>,</#if>
+    </#if>
+</#list>
+        );
+    }
+
+    // Like the PostgreSQL mapper, it leaves entity references as ids; EAGER ones are loaded for all the objects read together afterwards.
+    @Override
+    protected AbstractPersistenceCapable decodeFields(UUID id, List<Object> fields, FdbContext context) {
+        ${entityName}Impl obj = new ${entityName}Impl();
+        obj.setPersistenceManager(context.getSession());
+        obj.setId(id);
+
+<#list fields as field>
+    <#if field.entity?? && field.entity>
+        obj.load${field.name?cap_first}Id((UUID) fields.get(${field?index}));
+    <#else>
+        obj.load${field.name?cap_first}(FdbValues.decode(fields.get(${field?index}), ${field.jdbcType}.class));
+    </#if>
+</#list>
+
+        return obj;
+    }
+
+    @Override
+    public UUID referenceId(PersistenceCapable obj, String field) {
+        var typedObj = (${entityName}Impl) obj;
+        return switch (field) {
+<#list references as reference>
+            case "${reference.name}" -> typedObj.get${reference.name?cap_first}Id();
+</#list>
+            default -> super.referenceId(obj, field);
+        };
+    }
+
+    @Override
+    protected void wireReference(PersistenceCapable obj, String field, PersistenceCapable entity) {
+        var typedObj = (${entityName}Impl) obj;
+        switch (field) {
+<#list eagerReferences as reference>
+            case "${reference.name}" -> typedObj.load${reference.name?cap_first}((${reference.jdbcType}) entity);
+</#list>
+            default -> super.wireReference(obj, field, entity);
+        }
+    }
+}
@@ -1,22 +1,181 @@
 package ${packageName};
 
-public class ${className} extends com.ahimsasystems.chenup.postgresdb.PostgresAbstractPersistenceCapable implements ${interfaceName} {
+public class ${className} extends com.ahimsasystems.chenup.core.AbstractPersistenceCapable implements ${interfaceName} {
 
+<#-- Entity references are stored as a LazyReference. EAGER ones are resolved by the mapper after the read, LAZY ones by the getter on first use.
+     load...Id() and get...Id() are for the mapper, which reads and writes only the id. -->
+<#if accessors == "SNAPSHOT">
+    /** All the fields as of one moment. Never changed, only replaced. */
+    public record State(<#list fields as field>${field.storedType} ${field.name}<#if !field?is_last>, </#if></#list>) {
+    }
+
+    private static final java.lang.invoke.VarHandle STATE;
+
+    static {
+        try {
+            STATE = java.lang.invoke.MethodHandles.lookup().findVarHandle(${className}.class, "state", State.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile State state = new State(<#list fields as field>${field.defaultValue}<#if !field?is_last>, </#if></#list>);
+
+    /** The fields as of one moment, consistent with each other. */
+    public State snapshot() {
+        return state;
+    }
+
+    /**
+     * Replaces several fields at once. The change may be applied more than once if another thread gets in between, so it should
+     * only compute the new state from the one it is given. The fields that differ afterwards are marked dirty.
+     */
+    public void update(java.util.function.UnaryOperator<State> change) {
+        State before;
+        State after;
+        do {
+            before = state;
+            after = change.apply(before);
+        } while (!STATE.compareAndSet(this, before, after));
+<#list fields as field>
+        if (!java.util.Objects.equals(before.${field.name}(), after.${field.name}())) {
+            markDirty(${field?index});
+        }
+</#list>
+    }
+
+<#list fields as field>
+    <#if field.reference>
+    public ${field.type} get${field.name?cap_first}() {
+        ${field.storedType} reference = state.${field.name}();
+        return reference != null ? reference.get(getPersistenceManager()) : null;
+    }
+
+    public java.util.UUID get${field.name?cap_first}Id() {
+        ${field.storedType} reference = state.${field.name}();
+        return reference != null ? reference.getId() : null;
+    }
+    <#else>
+    public ${field.type} get${field.name?cap_first}() {
+        return state.${field.name}();
+    }
+    </#if>
+
+    public void set${field.name?cap_first}(${field.type} ${field.name}) {
+        load${field.name?cap_first}(${field.name});
+        markDirty(${field?index});
+    }
+
+    <#if field.reference>
+    public void load${field.name?cap_first}(${field.type} ${field.name}) {
+        replace${field.name?cap_first}(com.ahimsasystems.chenup.core.LazyReference.of(${field.name}, ${field.type}.class));
+    }
+
+    public void load${field.name?cap_first}Id(java.util.UUID id) {
+        replace${field.name?cap_first}(com.ahimsasystems.chenup.core.LazyReference.to(id, ${field.type}.class));
+    }
+    <#else>
+    public void load${field.name?cap_first}(${field.type} ${field.name}) {
+        replace${field.name?cap_first}(${field.name});
+    }
+    </#if>
+
+    private void replace${field.name?cap_first}(${field.storedType} ${field.name}) {
+        State before;
+        do {
+            before = state;
+        } while (!STATE.compareAndSet(this, before, new State(<#list fields as other><#if other?index == field?index>${field.name}<#else>before.${other.name}()</#if><#if !other?is_last>, </#if></#list>)));
+    }
+
+</#list>
+<#elseif accessors == "VOLATILE">
 <#list fields as field>
-    private ${field.type} ${field.name};
+    private volatile ${field.storedType} ${field.name};
 
+    <#if field.reference>
+    public ${field.type} get${field.name?cap_first}() {
+        ${field.storedType} reference = ${field.name};
+        return reference != null ? reference.get(getPersistenceManager()) : null;
+    }
+
+    public java.util.UUID get${field.name?cap_first}Id() {
+        ${field.storedType} reference = ${field.name};
+        return reference != null ? reference.getId() : null;
+    }
+
+    public void set${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.of(${field.name}, ${field.type}.class);
+        markDirty(${field?index});
+    }
+
+    public void load${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.of(${field.name}, ${field.type}.class);
+    }
+
+    public void load${field.name?cap_first}Id(java.util.UUID id) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.to(id, ${field.type}.class);
+    }
+    <#else>
+    public ${field.type} get${field.name?cap_first}() {
+        return ${field.name};
+    }
+
+    public void set${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = ${field.name};
+        markDirty(${field?index});
+    }
+
+    public void load${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = ${field.name};
+    }
+    </#if>
+
+</#list>
+<#else>
+<#list fields as field>
+    private ${field.storedType} ${field.name};
+
+    <#if field.reference>
+    public ${field.type} get${field.name?cap_first}() {
+        ${field.storedType} reference;
+        synchronized (this) {
+            reference = ${field.name};
+        }
+        // Resolved outside the lock, since it may read from the database.
+        return reference != null ? reference.get(getPersistenceManager()) : null;
+    }
+
+    synchronized public java.util.UUID get${field.name?cap_first}Id() {
+        return ${field.name} != null ? ${field.name}.getId() : null;
+    }
+
+    synchronized public void set${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.of(${field.name}, ${field.type}.class);
+        markDirty(${field?index});
+    }
+
+    synchronized public void load${field.name?cap_first}(${field.type} ${field.name}) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.of(${field.name}, ${field.type}.class);
+    }
+
+    synchronized public void load${field.name?cap_first}Id(java.util.UUID id) {
+        this.${field.name} = com.ahimsasystems.chenup.core.LazyReference.to(id, ${field.type}.class);
+    }
+    <#else>
     synchronized public ${field.type} get${field.name?cap_first}() {
     return ${field.name};
     }
 
     synchronized public void set${field.name?cap_first}(${field.type} ${field.name}) {
     this.${field.name} = ${field.name};
-    getPersistenceManager().dirty(this);
+    markDirty(${field?index});
     }
 
         synchronized public void load${field.name?cap_first}(${field.type} ${field.name}) {
             this.${field.name} = ${field.name};
         }
+    </#if>
 </#list>
+</#if>
 
 }
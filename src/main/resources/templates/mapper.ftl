@@ -1,14 +1,22 @@
 package ${packageName};
 
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.EntityReference;
 import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
 import com.ahimsasystems.chenup.postgresdb.PostgresAbstractMapper;
 import com.ahimsasystems.chenup.postgresdb.PostgresContext;
-import org.postgresql.util.PGobject;
+import com.ahimsasystems.chenup.postgresdb.PgCompositeType;
+import com.ahimsasystems.chenup.postgresdb.PgBinaryWriter;
+import com.ahimsasystems.chenup.postgresdb.PgCopyBinaryWriter;
+import com.ahimsasystems.chenup.postgresdb.PgTypes;
+import com.ahimsasystems.chenup.postgresdb.ReferenceBatch;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.UUID;
 import java.util.List;
 
@@ -21,54 +29,140 @@ import java.util.List;
 
 public class ${entityName}Mapper extends PostgresAbstractMapper {
 
+// The SQL is fixed per type, so it is built once here rather than on every call.
+// THING is joined so that the version and deleted flag come back in the same round trip as the entity.
+// All the reads share this row shape and differ only in their WHERE clause.
+private static final String SELECT_SQL = "SELECT e.id, <#list fields as field>e.${field.sqlName}, </#list>" + THING_METADATA_COLUMNS + " " +
+        "FROM ${tableName} e JOIN THING t ON t.id = e.id";
+
+private static final String READ_SQL = SELECT_SQL + " WHERE e.id = ?";
+
+// Multi-get: the same row shape for a whole array of ids in one round trip.
+private static final String READ_ALL_SQL = SELECT_SQL + " WHERE e.id = ANY(?)";
+
+// Single round trip: the THING version check and bump, and the entity upsert, in one writable CTE.
+private static final String UPSERT_SQL = VERSIONED_THING_CTE +
+        "INSERT INTO ${tableName} (id, <#list fields as field>${field.sqlName}<#if !field?is_last>, </#if></#list>) " +
+        "SELECT thing_row.id, <#list fields as field>?<#if !field?is_last>, </#if></#list> FROM thing_row " +
+        "ON CONFLICT (id) DO UPDATE SET " +
+        "<#list fields as field>${field.sqlName} = EXCLUDED.${field.sqlName}<#if !field?is_last>, </#if></#list>";
+
+// The entity's own columns in field order, for the UPDATEs of only the changed columns.
+private static final List<String> COLUMNS = List.of(<#list fields as field>"${field.sqlName}"<#if !field?is_last>, </#if></#list>);
+
+// Bulk-load path used for large sets of new objects. Columns are in the same order as writeCopyRow writes them.
+private static final String COPY_SQL = "COPY ${tableName} (id, <#list fields as field>${field.sqlName}<#if !field?is_last>, </#if></#list>) FROM STDIN (FORMAT BINARY)";
+
+// Mappers are stateless singletons, registered once by the generated PersistenceInitializer.
 public ${entityName}Mapper() {}
 
+@Override
+protected String getSelectSql() {
+    return SELECT_SQL;
+}
+
 @Override
 protected String getReadSql() {
-return "SELECT id, <#list fields as field>${field.sqlName}<#if !field?is_last>, </#if></#list> FROM ${tableName} WHERE id = ?";
+    return READ_SQL;
+}
 
+@Override
+protected String getReadAllSql() {
+    return READ_ALL_SQL;
+}
+
+@Override
+public List<PgCompositeType> compositeTypes() {
+    return List.of(<#list compositeCodecs as compositeCodec>${compositeCodec}.TYPE<#if !compositeCodec?is_last>, </#if></#list>);
+}
+
+// The fields that refer to entities, which graph loading follows.
+private static final List<EntityReference> REFERENCES = List.of(<#list references as reference>new EntityReference("${reference.name}", "${reference.sqlName}", ${reference.jdbcType}.class)<#if !reference?is_last>, </#if></#list>);
+
+@Override
+public List<EntityReference> references() {
+    return REFERENCES;
+}
 
+@Override
+public UUID referenceId(PersistenceCapable obj, String field) {
+    var typedObj = (${entityName}Impl) obj;
+    return switch (field) {
+<#list references as reference>
+        case "${reference.name}" -> typedObj.get${reference.name?cap_first}Id();
+</#list>
+        default -> super.referenceId(obj, field);
+    };
 }
 
     protected String upsertSql() {
-        return "INSERT INTO ${tableName} (id, <#list fields as field>${field.sqlName}<#if !field?is_last>, </#if></#list>) " +
-                "VALUES (?, <#list fields as field>?<#if !field?is_last>, </#if></#list>) " +
-                "ON CONFLICT (id) DO UPDATE SET " +
-                "<#list fields as field>${field.sqlName} = EXCLUDED.${field.sqlName}<#if !field?is_last>, </#if></#list>";
+        return UPSERT_SQL;
+    }
+
+    protected String tableName() {
+        return "${tableName}";
+    }
+
+    protected List<String> columnNames() {
+        return COLUMNS;
+    }
+
+    protected String copySql() {
+        return COPY_SQL;
     }
 
+    protected void writeCopyRow(PgCopyBinaryWriter writer, PersistenceCapable obj, PgTypes types) throws SQLException {
+        var typedObj = (${entityName}Impl) obj;
 
+        writer.startRow(${fields?size + 1});
+        writer.writeUuid(obj.getId());
+<#list fields as field>
+    <#if field.udt?? && field.udt>
+        <#if field.entity?? && field.entity>
+        writer.writeUuid(typedObj.get${field.name?cap_first}Id());
+        <#else>
+        {
+            // Embedded record: encoded by its generated codec, with the attribute types of the UDT, so varchar and char attributes work too
+            ${field.jdbcType} sub = typedObj.get${field.name?cap_first}();
+            if (sub != null) {
+                PgBinaryWriter out = PgBinaryWriter.local().begin(types);
+                ${field.codec}.encodeBinary(sub, out);
+                writer.writeBinary(out);
+            } else {
+                writer.writeNull();
+            }
+        }
+        </#if>
+    <#else>
+        writer.writeValue(typedObj.get${field.name?cap_first}());
+    </#if>
+</#list>
+    }
+
+// Hydrates the row the ResultSet is positioned on. The caller advances the cursor, so this serves single reads and multi-row reads alike.
 @Override
 protected Object getRecord(ResultSet rs, PostgresContext context) {
 try {
-rs.next();
-
 ${entityName}Impl obj = new ${entityName}Impl();
-obj.setPersistenceManager(context.getPersistenceManager());
+obj.setPersistenceManager(context.getSession());
 
 obj.setId(rs.getObject("id", UUID.class));
 
 <#list fields as field>
     <#if field.udt?? && field.udt>
         <#if field.entity?? && field.entity>
-        // Entity reference: fetch only the ID
-        {
-            UUID ${field.name}Id = rs.getObject("${field.sqlName}", UUID.class);
-            ${field.jdbcType} entity = context.getPersistenceManager().read(${field.name}Id, ${field.jdbcType}. class,
-            context);
-            obj.load${field.name?cap_first}(entity);
-        }
+        // Entity reference: only the id. EAGER ones are loaded for all the rows at once afterwards, see loadReferences().
+        obj.load${field.name?cap_first}Id(rs.getObject("${field.sqlName}", UUID.class));
         <#else>
-        // Embedded record: parse the UDT JSON or string representation
-        var pgobject = (PGobject) rs.getObject("${field.sqlName}");
-            ${field.jdbcType} record = toRecord(pgobject.getValue(), ${field.jdbcType}.class);
-        obj.load${field.name?cap_first}(record);
+        // Embedded record: decoded by its generated codec, from the binary form if PgTypes turned it on for this type, else from the text
+        obj.load${field.name?cap_first}(${field.codec}.fromObject(rs.getObject("${field.sqlName}")));
         </#if>
     <#else>
     obj.load${field.name?cap_first}(rs.getObject("${field.sqlName}", ${field.jdbcType}.class));
     </#if>
 </#list>
 
+readMetaData(rs, obj);
 
     return obj;
 
@@ -77,26 +171,86 @@ obj.setId(rs.getObject("id", UUID.class));
     }
     }
 
-    protected void setRecord(PreparedStatement ps, PersistenceCapable obj, PostgresContext context) {
-        try {
-            int index = 1;
+    // The EAGER entity references of a hydrated object, to be loaded together with those of the other objects read with it.
+    @Override
+    protected void collectReferences(PersistenceCapable obj, ReferenceBatch batch) {
+        var typedObj = (${entityName}Impl) obj;
+<#list fields as field>
+    <#if field.eager?? && field.eager>
+        batch.add(${field.jdbcType}.class, typedObj.get${field.name?cap_first}Id());
+    </#if>
+</#list>
+    }
 
-            var typedObj = (${entityName}Impl) obj;
+    // Wires the loaded EAGER references in, so they stay reachable from the object whatever the identity map evicts.
+    @Override
+    protected void wireReferences(PersistenceCapable obj, ReferenceBatch batch) {
+        var typedObj = (${entityName}Impl) obj;
+<#list fields as field>
+    <#if field.eager?? && field.eager>
+        {
+            ${field.jdbcType} entity = batch.get(typedObj.get${field.name?cap_first}Id());
+            if (entity != null) {
+                typedObj.load${field.name?cap_first}(entity);
+            }
+        }
+    </#if>
+</#list>
+    }
 
-            ps.setObject(index++, obj.getId());
+    // Second-level cache: the field values in field order, with referenced entities reduced to their ids.
+    @Override
+    protected Object[] snapshotValues(PersistenceCapable obj) {
+        var typedObj = (${entityName}Impl) obj;
+        return new Object[] {
+<#list fields as field>
+    <#if field.entity?? && field.entity>
+            typedObj.get${field.name?cap_first}Id()<#if !field?is_last>,</#if>
+    <#else>
+            typedObj.get${field.name?cap_first}()<#if !field?is_last>,</#if>
+    </#if>
+</#list>
+        };
+    }
+
+    // The inverse of snapshotValues(). Like getRecord(), it leaves entity references as ids for loadReferences().
+    @Override
+    protected AbstractPersistenceCapable materializeFields(SecondLevelCache.Snapshot snapshot, PostgresContext context) {
+        ${entityName}Impl obj = new ${entityName}Impl();
+        obj.setPersistenceManager(context.getSession());
+        obj.setId(snapshot.getId());
 
 <#list fields as field>
-    <#if field.udt?? && field.udt>
-        {
+    <#if field.entity?? && field.entity>
+        obj.load${field.name?cap_first}Id((UUID) snapshot.get(${field?index}));
+    <#else>
+        obj.load${field.name?cap_first}((${field.jdbcType}) snapshot.get(${field?index}));
+    </#if>
+</#list>
+
+        return obj;
+    }
+
+    protected void setColumns(PreparedStatement ps, int index, PersistenceCapable obj, long fields, PostgresContext context) {
+        try {
+            var typedObj = (${entityName}Impl) obj;
+
+<#list fields as field>
+        if (isSet(fields, ${field?index})) {
+    <#if field.entity?? && field.entity>
+            // Entity reference: the column holds the referenced object's id, written without reading the entity
+            ps.setObject(index++, typedObj.get${field.name?cap_first}Id());
+    <#elseif field.udt?? && field.udt>
             ${field.jdbcType} sub = typedObj.get${field.name?cap_first}();
-            PGobject pgobject = new PGobject();
-            pgobject.setType("${field.udtType}"); // e.g., "separate_name_type"
-            pgobject.setValue(sub != null ? serializeToPostgresComposite(sub) : null);
-            ps.setObject(index++, pgobject);
-        }
+            if (sub != null) {
+                ps.setObject(index++, ${field.codec}.toObject(sub, context.getSession().getPersistenceManager().getTypes()));
+            } else {
+                ps.setNull(index++, Types.OTHER);
+            }
     <#else>
-        ps.setObject(index++, typedObj.get${field.name?cap_first}());
+            ps.setObject(index++, typedObj.get${field.name?cap_first}());
     </#if>
+        }
 </#list>
 
         } catch (SQLException e) {
@@ -0,0 +1,83 @@
+package com.ahimsasystems.chenup.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The ordering of UUIDv7Generator: ids from one JVM are strictly increasing, within a millisecond and across the counter running out,
+ * and generate(n) hands out consecutive ids. Ids are compared by their timestamp and counter, (milliseconds << 12) | counter.
+ */
+class UUIDv7GeneratorTest {
+
+    @Test
+    void idsIncreaseStrictlyWithinAMillisecond() {
+        long previous = timestampAndCounter(UUIDv7Generator.generateUUIDv7());
+        int sameMillisecond = 0;
+        for (int i = 0; i < 10_000; i++) {
+            UUID id = UUIDv7Generator.generateUUIDv7();
+            long current = timestampAndCounter(id);
+            assertTrue(current > previous, id.toString());
+            if (current >>> 12 == previous >>> 12) {
+                sameMillisecond++;
+            }
+            previous = current;
+        }
+        // Otherwise the loop would only have checked the first id of each millisecond.
+        assertTrue(sameMillisecond > 0);
+    }
+
+    @Test
+    void counterOverflowCarriesIntoTheTimestamp() {
+        // A millisecond's counter starts below 2048, so 5000 ids in one call cannot fit in the 4096 values of one millisecond.
+        UUID[] ids = UUIDv7Generator.generate(5000);
+
+        long first = timestampAndCounter(ids[0]);
+        for (int i = 1; i < ids.length; i++) {
+            assertEquals(first + i, timestampAndCounter(ids[i]), "id " + i);
+        }
+        assertTrue(timestampAndCounter(ids[ids.length - 1]) >>> 12 > first >>> 12);
+        // Ids after the carry keep going up, even though the clock may not have caught up yet.
+        assertTrue(timestampAndCounter(UUIDv7Generator.generateUUIDv7()) > timestampAndCounter(ids[ids.length - 1]));
+    }
+
+    @Test
+    void generateHandsOutConsecutiveRanges() {
+        assertEquals(0, UUIDv7Generator.generate(0).length);
+        assertThrows(IllegalArgumentException.class, () -> UUIDv7Generator.generate(-1));
+
+        UUID[] first = UUIDv7Generator.generate(100);
+        UUID[] second = UUIDv7Generator.generate(100);
+        assertEquals(100, first.length);
+        for (UUID[] range : new UUID[][]{first, second}) {
+            long start = timestampAndCounter(range[0]);
+            for (int i = 0; i < range.length; i++) {
+                assertEquals(start + i, timestampAndCounter(range[i]));
+                assertEquals(7, range[i].version());
+                assertEquals(2, range[i].variant());
+            }
+        }
+        assertTrue(timestampAndCounter(second[0]) > timestampAndCounter(first[first.length - 1]));
+
+        // The random bits differ from id to id, even within a range.
+        Set<Long> randomBits = new HashSet<>();
+        for (UUID id : first) {
+            randomBits.add(id.getLeastSignificantBits());
+        }
+        assertEquals(first.length, randomBits.size());
+    }
+
+    private static long timestampAndCounter(UUID id) {
+        long msb = id.getMostSignificantBits();
+        return (msb >>> 16) << 12 | (msb & 0xFFF);
+    }
+}
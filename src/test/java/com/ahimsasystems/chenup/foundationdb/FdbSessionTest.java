@@ -0,0 +1,429 @@
+package com.ahimsasystems.chenup.foundationdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.EntityReference;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.foundationdb.model.Author;
+import com.ahimsasystems.chenup.foundationdb.model.AuthorImpl;
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.apple.foundationdb.tuple.Tuple;
+import com.example.MyPersistenceInitializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * FdbSession against a running FoundationDB cluster. The tests are skipped when there is no cluster file, at FDB_CLUSTER_FILE
+ * or the default location, so the build does not need a cluster.
+ * <p>
+ * Each test writes under a key prefix of its own, which is cleared afterwards. Most of the types are written by hand, the way the generated
+ * Impls and FDB mappers are, so those tests do not depend on the annotation processor. Author, in the model package, is an @Entity
+ * of the test sources, whose Impl, FDB mapper and initializer the processor generates.
+ */
+class FdbSessionTest {
+
+    private static Database database;
+
+    private FdbPersistenceManager manager;
+
+    @BeforeAll
+    static void openDatabase() {
+        Path clusterFile = clusterFile();
+        assumeTrue(clusterFile != null, "No FoundationDB cluster file, set FDB_CLUSTER_FILE to run the FoundationDB tests");
+        database = FDB.selectAPIVersion(710).open(clusterFile.toString());
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private static Path clusterFile() {
+        String configured = System.getenv("FDB_CLUSTER_FILE");
+        List<String> candidates = configured != null ? List.of(configured)
+                : List.of("/etc/foundationdb/fdb.cluster", "/usr/local/etc/foundationdb/fdb.cluster");
+        for (String candidate : candidates) {
+            Path path = Path.of(candidate);
+            if (Files.isRegularFile(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    @BeforeEach
+    void createManager() {
+        manager = new FdbPersistenceManager();
+        manager.setKeyPrefix(Tuple.from("chenup-test", UUID.randomUUID()));
+        manager.registerType(Person.class, Person::new);
+        manager.registerFdbMapper(Person.class, PersonMapper::new);
+        manager.registerType(Employment.class, Employment::new);
+        manager.registerFdbMapper(Employment.class, EmploymentMapper::new);
+    }
+
+    @AfterEach
+    void clearKeys() {
+        if (manager != null) {
+            database.run(transaction -> {
+                transaction.clear(manager.getKeyPrefix().range());
+                return null;
+            });
+        }
+    }
+
+    @Test
+    void roundTrip() {
+        FdbSession session = manager.openSession();
+        Person person = (Person) session.create(Person.class);
+        person.setName("Ada");
+
+        FlushResult result = session.flush(database);
+        assertEquals(1, result.getFlushedCount());
+        assertEquals(1, person.getMetaData().getVersion());
+
+        FdbSession reader = manager.openSession();
+        Person read = inTransaction(reader, context -> reader.read(person.getId(), Person.class, context));
+        assertNotSame(person, read);
+        assertEquals("Ada", read.getName());
+        assertEquals(1, read.getMetaData().getVersion());
+
+        read.setName("Ada Lovelace");
+        assertEquals(1, reader.flush(database).getFlushedCount());
+        assertEquals(2, read.getMetaData().getVersion());
+
+        FdbSession again = manager.openSession();
+        Person reread = inTransaction(again, context -> again.read(person.getId(), Person.class, context));
+        assertEquals("Ada Lovelace", reread.getName());
+        assertEquals(2, reread.getMetaData().getVersion());
+    }
+
+    @Test
+    void versionConflict() {
+        FdbSession session = manager.openSession();
+        Person person = (Person) session.create(Person.class);
+        person.setName("Ada");
+        session.flush(database);
+
+        FdbSession first = manager.openSession();
+        FdbSession second = manager.openSession();
+        Person firstCopy = inTransaction(first, context -> first.read(person.getId(), Person.class, context));
+        Person secondCopy = inTransaction(second, context -> second.read(person.getId(), Person.class, context));
+
+        firstCopy.setName("First");
+        assertEquals(1, first.flush(database).getFlushedCount());
+
+        secondCopy.setName("Second");
+        FlushResult result = second.flush(database);
+        assertEquals(0, result.getFlushedCount());
+        assertEquals(Set.of(person.getId()), result.getVersionConflicts());
+        // Not written, so it keeps its version and is still pending.
+        assertEquals(1, secondCopy.getMetaData().getVersion());
+        assertEquals(Set.of(person.getId()), second.flush(database).getVersionConflicts());
+
+        FdbSession reader = manager.openSession();
+        Person stored = inTransaction(reader, context -> reader.read(person.getId(), Person.class, context));
+        assertEquals("First", stored.getName());
+        assertEquals(2, stored.getMetaData().getVersion());
+    }
+
+    @Test
+    void referenceIndexFollowsChanges() {
+        FdbSession session = manager.openSession();
+        Person ada = (Person) session.create(Person.class);
+        ada.setName("Ada");
+        Person grace = (Person) session.create(Person.class);
+        grace.setName("Grace");
+        Employment employment = (Employment) session.create(Employment.class);
+        employment.setTitle("Engineer");
+        employment.setEmployee(ada);
+        session.flush(database);
+
+        assertEquals(List.of(employment.getId()), employmentsOf(ada));
+        assertEquals(List.of(), employmentsOf(grace));
+
+        employment.setEmployee(grace);
+        assertEquals(1, session.flush(database).getFlushedCount());
+
+        assertEquals(List.of(), employmentsOf(ada));
+        assertEquals(0, indexEntries("employment", "employee", ada));
+        assertEquals(List.of(employment.getId()), employmentsOf(grace));
+
+        // A change to another field leaves the index alone.
+        employment.setTitle("Manager");
+        session.flush(database);
+        assertEquals(List.of(employment.getId()), employmentsOf(grace));
+    }
+
+    @Test
+    void deleteRemovesTheReferenceIndex() {
+        FdbSession session = manager.openSession();
+        Person ada = (Person) session.create(Person.class);
+        ada.setName("Ada");
+        Employment employment = (Employment) session.create(Employment.class);
+        employment.setTitle("Engineer");
+        employment.setEmployee(ada);
+        session.flush(database);
+        assertEquals(List.of(employment.getId()), employmentsOf(ada));
+
+        inTransaction(session, context -> {
+            session.getMapper(Employment.class).delete(employment, context);
+            return null;
+        });
+
+        assertEquals(List.of(), employmentsOf(ada));
+        // readReferencing() skips ids it cannot read, so the index itself is checked for a leftover entry.
+        assertEquals(0, indexEntries("employment", "employee", ada));
+        FdbSession reader = manager.openSession();
+        assertNull(inTransaction(reader, context -> reader.read(employment.getId(), Employment.class, context)));
+    }
+
+    @Test
+    void eagerReferencesAreLoadedWithTheObject() {
+        FdbSession session = manager.openSession();
+        Person ada = (Person) session.create(Person.class);
+        ada.setName("Ada");
+        Employment first = (Employment) session.create(Employment.class);
+        first.setTitle("Engineer");
+        first.setEmployee(ada);
+        Employment second = (Employment) session.create(Employment.class);
+        second.setTitle("Manager");
+        second.setEmployee(ada);
+        Employment unassigned = (Employment) session.create(Employment.class);
+        unassigned.setTitle("Vacant");
+        session.flush(database);
+
+        FdbSession reader = manager.openSession();
+        List<Employment> read = inTransaction(reader,
+                context -> reader.readAll(List.of(first.getId(), second.getId(), unassigned.getId()), Employment.class, context));
+
+        assertEquals(3, read.size());
+        // Wired in by the read itself, not resolved later, and the same object for both, from the identity map.
+        Person employee = read.get(0).loadedEmployee();
+        assertNotNull(employee);
+        assertEquals("Ada", employee.getName());
+        assertSame(employee, read.get(1).loadedEmployee());
+        assertNull(read.get(2).loadedEmployee());
+        assertSame(employee, inTransaction(reader, context -> reader.read(ada.getId(), Person.class, context)));
+        assertTrue(reader.getIdentityMap().containsKey(ada.getId()));
+    }
+
+    @Test
+    void generatedMapperRoundTrip() {
+        new MyPersistenceInitializer().registerAll(manager);
+
+        FdbSession session = manager.openSession();
+        Author author = (Author) session.create(Author.class);
+        author.setName("Ursula");
+        author.setBirthDate(LocalDate.of(1929, 10, 21));
+        assertEquals(1, session.flush(database).getFlushedCount());
+
+        FdbSession reader = manager.openSession();
+        Author read = inTransaction(reader, context -> reader.read(author.getId(), Author.class, context));
+        assertInstanceOf(AuthorImpl.class, read);
+        assertEquals("Ursula", read.getName());
+        assertEquals(LocalDate.of(1929, 10, 21), read.getBirthDate());
+
+        // Only the changed field is marked dirty, but the generated mapper still stores the whole object.
+        read.setName("Ursula K. Le Guin");
+        assertEquals(1, reader.flush(database).getFlushedCount());
+
+        FdbSession again = manager.openSession();
+        Author reread = inTransaction(again, context -> again.read(author.getId(), Author.class, context));
+        assertEquals("Ursula K. Le Guin", reread.getName());
+        assertEquals(LocalDate.of(1929, 10, 21), reread.getBirthDate());
+        assertEquals(2, ((AbstractPersistenceCapable) reread).getMetaData().getVersion());
+    }
+
+    private List<UUID> employmentsOf(Person person) {
+        FdbSession reader = manager.openSession();
+        List<Employment> employments = inTransaction(reader,
+                context -> reader.readReferencing(Employment.class, "employee", List.of(person.getId()), context));
+        return employments.stream().map(Employment::getId).toList();
+    }
+
+    // The entries of the reference index for the entity, see FdbAbstractMapper for the key layout.
+    private int indexEntries(String table, String field, Person person) {
+        Tuple index = manager.getKeyPrefix().add("r").add(table).add(field).add(person.getId());
+        return database.run(transaction -> transaction.getRange(index.range()).asList().join().size());
+    }
+
+    private static <T> T inTransaction(FdbSession session, Function<FdbContext, T> work) {
+        return database.run(transaction -> {
+            try (FdbContext context = new FdbContext(transaction, session)) {
+                return work.apply(context);
+            }
+        });
+    }
+
+    static final class Person extends AbstractPersistenceCapable {
+        private String name;
+
+        String getName() {
+            return name;
+        }
+
+        void setName(String name) {
+            this.name = name;
+            markDirty(0);
+        }
+
+        void loadName(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class Employment extends AbstractPersistenceCapable {
+        private String title;
+        private UUID employeeId;
+        private Person employee;
+
+        String getTitle() {
+            return title;
+        }
+
+        void setTitle(String title) {
+            this.title = title;
+            markDirty(0);
+        }
+
+        void loadTitle(String title) {
+            this.title = title;
+        }
+
+        UUID getEmployeeId() {
+            return employeeId;
+        }
+
+        // The employee as loaded, without reading it.
+        Person loadedEmployee() {
+            return employee;
+        }
+
+        void setEmployee(Person employee) {
+            this.employee = employee;
+            this.employeeId = employee != null ? employee.getId() : null;
+            markDirty(1);
+        }
+
+        void loadEmployeeId(UUID id) {
+            this.employeeId = id;
+            this.employee = null;
+        }
+
+        void loadEmployee(Person employee) {
+            this.employee = employee;
+        }
+    }
+
+    static final class PersonMapper extends FdbAbstractMapper {
+        private static final List<String> FIELDS = List.of("name");
+
+        @Override
+        protected String tableName() {
+            return "person";
+        }
+
+        @Override
+        protected List<String> fieldNames() {
+            return FIELDS;
+        }
+
+        @Override
+        protected List<Object> encodeFields(PersistenceCapable obj) {
+            return Arrays.asList(FdbValues.encode(((Person) obj).getName()));
+        }
+
+        @Override
+        protected AbstractPersistenceCapable decodeFields(UUID id, List<Object> fields, FdbContext context) {
+            Person obj = new Person();
+            obj.setPersistenceManager(context.getSession());
+            obj.setId(id);
+            obj.loadName(FdbValues.decode(fields.get(0), String.class));
+            return obj;
+        }
+    }
+
+    static final class EmploymentMapper extends FdbAbstractMapper {
+        private static final List<String> FIELDS = List.of("title", "employee");
+        private static final List<EntityReference> REFERENCES = List.of(new EntityReference("employee", "employee", Person.class));
+
+        @Override
+        protected String tableName() {
+            return "employment";
+        }
+
+        @Override
+        protected List<String> fieldNames() {
+            return FIELDS;
+        }
+
+        @Override
+        public List<EntityReference> references() {
+            return REFERENCES;
+        }
+
+        @Override
+        protected List<EntityReference> eagerReferences() {
+            return REFERENCES;
+        }
+
+        @Override
+        protected List<Object> encodeFields(PersistenceCapable obj) {
+            Employment employment = (Employment) obj;
+            return Arrays.asList(FdbValues.encode(employment.getTitle()), employment.getEmployeeId());
+        }
+
+        @Override
+        protected AbstractPersistenceCapable decodeFields(UUID id, List<Object> fields, FdbContext context) {
+            Employment obj = new Employment();
+            obj.setPersistenceManager(context.getSession());
+            obj.setId(id);
+            obj.loadTitle(FdbValues.decode(fields.get(0), String.class));
+            obj.loadEmployeeId((UUID) fields.get(1));
+            return obj;
+        }
+
+        @Override
+        public UUID referenceId(PersistenceCapable obj, String field) {
+            return switch (field) {
+                case "employee" -> ((Employment) obj).getEmployeeId();
+                default -> super.referenceId(obj, field);
+            };
+        }
+
+        @Override
+        protected void wireReference(PersistenceCapable obj, String field, PersistenceCapable entity) {
+            switch (field) {
+                case "employee" -> ((Employment) obj).loadEmployee((Person) entity);
+                default -> super.wireReference(obj, field, entity);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ahimsasystems.chenup.foundationdb.model;
+
+import com.ahimsasystems.chenup.annotations.Entity;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+
+import java.time.LocalDate;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+// An entity for the tests. AuthorImpl, AuthorFdbMapper and the initializer that registers them are generated by the chenup annotation
+// processor when the test sources are compiled.
+@Entity
+public interface Author extends PersistenceCapable {
+    String getName();
+
+    void setName(String name);
+
+    LocalDate getBirthDate();
+
+    void setBirthDate(LocalDate birthDate);
+}
@@ -0,0 +1,376 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.FlushResult;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.PersistenceManager;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * The column-minimal UPDATEs of PostgresAbstractMapper, without a database: which fields an object writes, the statement
+ * for a set of fields, and how upsertAll() batches objects by their fields. The statements go to a fake connection that
+ * records what was prepared, set and batched.
+ */
+class PostgresAbstractMapperTest {
+
+    private static final long ALL_FIELDS = PostgresAbstractMapper.ALL_FIELDS;
+
+    private final List<Statement> statements = new ArrayList<>();
+    // The update count executeBatch() returns for each row; 0 is a version conflict.
+    private ToIntFunction<Map<Integer, Object>> updateCount = row -> 1;
+    private PostgresContext context;
+
+    @BeforeEach
+    void openContext() {
+        context = new PostgresContext(connection(), new PostgresPersistenceManager().openSession());
+    }
+
+    @AfterEach
+    void closeContext() {
+        context.close();
+    }
+
+    @Test
+    void updateSqlSetsOnlyTheColumnsOfTheFields() {
+        TestMapper mapper = new TestMapper(4);
+
+        String sql = mapper.updateSql(0b0101);
+
+        assertTrue(sql.startsWith("WITH thing_row AS (UPDATE THING SET VERSION"), sql);
+        // The version is only bumped along with the entity row.
+        assertTrue(sql.contains("AND EXISTS (SELECT 1 FROM test_row WHERE id = v.id) RETURNING THING.id"), sql);
+        assertTrue(sql.endsWith("UPDATE test_row e SET c0 = ?, c2 = ? FROM thing_row WHERE e.id = thing_row.id"), sql);
+        assertEquals(sql.replace("c0 = ?, c2 = ?", "c1 = ?, c3 = ?"), mapper.updateSql(0b1010));
+    }
+
+    @Test
+    void updateSqlIsBuiltOncePerFields() {
+        TestMapper mapper = new TestMapper(4);
+
+        assertSame(mapper.updateSql(0b0011), mapper.updateSql(0b0011));
+    }
+
+    @Test
+    void fieldsToWriteTakesTheDirtyFields() {
+        TestMapper mapper = new TestMapper(4);
+        TestRow row = new TestRow(4, 1);
+        row.set(0);
+        row.set(2);
+
+        assertEquals(0b0101L, mapper.fieldsToWrite(row));
+        assertEquals(0L, row.getDirtyFields());
+
+        // Taken but not committed, so a second write takes them again, with whatever was set since.
+        row.set(3);
+        assertEquals(0b1101L, mapper.fieldsToWrite(row));
+        row.writeCommitted();
+        row.set(1);
+        assertEquals(0b0010L, mapper.fieldsToWrite(row));
+    }
+
+    @Test
+    void newObjectsAreWrittenInFull() {
+        TestMapper mapper = new TestMapper(4);
+        TestRow row = new TestRow(4, 0);
+        row.set(1);
+
+        assertEquals(ALL_FIELDS, mapper.fieldsToWrite(row));
+    }
+
+    @Test
+    void objectsWithoutDirtyFieldsAreWrittenInFull() {
+        // Changed in some other way than through the generated setters, so there is nothing to tell which columns changed.
+        assertEquals(ALL_FIELDS, new TestMapper(4).fieldsToWrite(new TestRow(4, 1)));
+    }
+
+    @Test
+    void objectsWithEveryFieldDirtyAreWrittenInFull() {
+        TestMapper mapper = new TestMapper(4);
+        TestRow row = new TestRow(4, 1);
+        for (int i = 0; i < 4; i++) {
+            row.set(i);
+        }
+
+        assertEquals(ALL_FIELDS, mapper.fieldsToWrite(row));
+    }
+
+    @Test
+    void fieldsPastTheLastBitShareIt() {
+        assertEquals(Long.MIN_VALUE, AbstractPersistenceCapable.dirtyBit(63));
+        assertEquals(Long.MIN_VALUE, AbstractPersistenceCapable.dirtyBit(64));
+        assertEquals(Long.MIN_VALUE, AbstractPersistenceCapable.dirtyBit(200));
+        assertEquals(1L << 62, AbstractPersistenceCapable.dirtyBit(62));
+
+        // Setting any one of them writes them all.
+        TestMapper mapper = new TestMapper(70);
+        TestRow row = new TestRow(70, 1);
+        row.set(66);
+        long fields = mapper.fieldsToWrite(row);
+        assertEquals(Long.MIN_VALUE, fields);
+
+        for (int i = 0; i < 70; i++) {
+            assertEquals(i >= 63, PostgresAbstractMapper.isSet(fields, i), "field " + i);
+        }
+        String sql = mapper.updateSql(fields);
+        assertTrue(sql.contains(" SET c63 = ?, c64 = ?, c65 = ?, c66 = ?, c67 = ?, c68 = ?, c69 = ? FROM "), sql);
+    }
+
+    @Test
+    void allFieldsSetsEveryColumn() {
+        for (int i : new int[]{0, 1, 62, 63, 64, 500}) {
+            assertTrue(PostgresAbstractMapper.isSet(ALL_FIELDS, i), "field " + i);
+        }
+    }
+
+    @Test
+    void upsertAllBatchesObjectsByTheirFields() {
+        TestMapper mapper = new TestMapper(3);
+        TestRow first = new TestRow(3, 1);
+        first.set(0);
+        TestRow second = new TestRow(3, 2);
+        second.set(1);
+        TestRow third = new TestRow(3, 5);
+        third.set(0);
+        TestRow both = new TestRow(3, 1);
+        both.set(0);
+        both.set(1);
+        TestRow created = new TestRow(3, 0);
+        created.set(2);
+
+        FlushResult result = mapper.upsertAll(List.of(first, second, third, both, created), context);
+
+        assertEquals(5, result.getFlushedCount());
+        assertFalse(result.hasVersionConflicts());
+        assertEquals(4, statements.size());
+
+        // One batch per set of fields, in the order the sets first appear.
+        assertEquals(mapper.updateSql(0b001), statements.get(0).sql);
+        assertEquals(List.of(row(first, 0), row(third, 0)), statements.get(0).batches);
+        assertEquals(mapper.updateSql(0b010), statements.get(1).sql);
+        assertEquals(List.of(row(second, 1)), statements.get(1).batches);
+        assertEquals(mapper.updateSql(0b011), statements.get(2).sql);
+        assertEquals(List.of(row(both, 0, 1)), statements.get(2).batches);
+        assertEquals(TestMapper.UPSERT_SQL, statements.get(3).sql);
+        assertEquals(List.of(row(created, 0, 1, 2)), statements.get(3).batches);
+
+        // The session clears what was written once the write commits, not the mapper.
+        for (TestRow row : List.of(first, second, third, both, created)) {
+            assertEquals(0L, row.getDirtyFields());
+            assertEquals(row.version, row.getMetaData().getVersion());
+        }
+    }
+
+    @Test
+    void upsertAllReportsConflictsAndPutsTheirFieldsBack() {
+        TestMapper mapper = new TestMapper(3);
+        TestRow current = new TestRow(3, 1);
+        current.set(0);
+        TestRow stale = new TestRow(3, 1);
+        stale.set(0);
+        stale.set(2);
+        TestRow staleToo = new TestRow(3, 1);
+        staleToo.set(0);
+        updateCount = row -> row.get(1).equals(stale.getId()) || row.get(1).equals(staleToo.getId()) ? 0 : 1;
+
+        FlushResult result = mapper.upsertAll(List.of(current, stale, staleToo), context);
+
+        assertEquals(1, result.getFlushedCount());
+        assertEquals(Set.of(stale.getId(), staleToo.getId()), result.getVersionConflicts());
+        assertEquals(0L, current.getDirtyFields());
+        assertEquals(0b101L, stale.getDirtyFields());
+        assertEquals(0b001L, staleToo.getDirtyFields());
+    }
+
+    @Test
+    void copyInUpsertsTypesWhoseCompositesAreNotBinary() {
+        // Not looked up in the database, so PgTypes has no attribute types for it and COPY could not encode it.
+        TestMapper mapper = new TestMapper(2);
+        mapper.compositeTypes = List.of(new PgCompositeType("test_udt", null, List.of("String"), List.of()));
+        TestRow first = new TestRow(2, 0);
+        TestRow second = new TestRow(2, 0);
+
+        FlushResult result = mapper.copyIn(List.of(first, second), context);
+
+        assertEquals(2, result.getFlushedCount());
+        assertEquals(1, statements.size());
+        assertEquals(TestMapper.UPSERT_SQL, statements.get(0).sql);
+        assertEquals(List.of(row(first, 0, 1), row(second, 0, 1)), statements.get(0).batches);
+    }
+
+    // The parameters of a row: the THING CTE's id, new version and expected version, then the values of the given fields.
+    private static Map<Integer, Object> row(TestRow row, int... fields) {
+        Map<Integer, Object> parameters = new HashMap<>();
+        parameters.put(1, row.getId());
+        parameters.put(2, row.version + 1);
+        parameters.put(3, row.version);
+        int index = 4;
+        for (int field : fields) {
+            parameters.put(index++, "v" + field);
+        }
+        return parameters;
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "prepareStatement" -> statement((String) args[0]);
+                    case "isWrapperFor" -> false;
+                    default -> null;
+                });
+    }
+
+    private PreparedStatement statement(String sql) {
+        Statement statement = new Statement(sql);
+        statements.add(statement);
+        Map<Integer, Object> parameters = new HashMap<>();
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "setObject", "setInt" -> {
+                        parameters.put((Integer) args[0], args[1]);
+                        yield null;
+                    }
+                    case "addBatch" -> {
+                        statement.batches.add(new HashMap<>(parameters));
+                        parameters.clear();
+                        yield null;
+                    }
+                    case "executeBatch" -> statement.batches.stream().mapToInt(updateCount).toArray();
+                    case "isClosed" -> false;
+                    default -> null;
+                });
+    }
+
+    private static final class Statement {
+        final String sql;
+        final List<Map<Integer, Object>> batches = new ArrayList<>();
+
+        Statement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    // An object with the given number of fields, already in the database at the given version, or new at version 0.
+    private static final class TestRow extends AbstractPersistenceCapable {
+        final int version;
+        final int fields;
+
+        TestRow(int fields, int version) {
+            this.fields = fields;
+            this.version = version;
+            getMetaData().setVersion(version);
+            // The setters tell the session an object is dirty; these objects are not in one.
+            setPersistenceManager((PersistenceManager<?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PersistenceManager.class}, (proxy, method, args) -> null));
+        }
+
+        // What a generated setter does.
+        void set(int field) {
+            markDirty(field);
+        }
+    }
+
+    // A mapper for TestRow, with columns c0, c1... whose values are v0, v1...
+    private static final class TestMapper extends PostgresAbstractMapper {
+        static final String UPSERT_SQL = VERSIONED_THING_CTE + "INSERT INTO test_row ...";
+
+        private final List<String> columns = new ArrayList<>();
+        List<PgCompositeType> compositeTypes = List.of();
+
+        TestMapper(int columns) {
+            for (int i = 0; i < columns; i++) {
+                this.columns.add("c" + i);
+            }
+        }
+
+        @Override
+        protected String upsertSql() {
+            return UPSERT_SQL;
+        }
+
+        @Override
+        protected String tableName() {
+            return "test_row";
+        }
+
+        @Override
+        protected List<String> columnNames() {
+            return columns;
+        }
+
+        @Override
+        protected void setColumns(PreparedStatement stmt, int index, PersistenceCapable object, long fields, PostgresContext context) throws SQLException {
+            for (int i = 0; i < ((TestRow) object).fields; i++) {
+                if (isSet(fields, i)) {
+                    stmt.setObject(index++, "v" + i);
+                }
+            }
+        }
+
+        @Override
+        protected String getSelectSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String getReadSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String getReadAllSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String copySql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void writeCopyRow(PgCopyBinaryWriter writer, PersistenceCapable object, PgTypes types) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<PgCompositeType> compositeTypes() {
+            return compositeTypes;
+        }
+
+        @Override
+        protected Object getRecord(ResultSet rs, PostgresContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Object[] snapshotValues(PersistenceCapable object) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected AbstractPersistenceCapable materializeFields(SecondLevelCache.Snapshot snapshot, PostgresContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
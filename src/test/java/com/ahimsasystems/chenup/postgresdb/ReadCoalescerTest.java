@@ -0,0 +1,209 @@
+package com.ahimsasystems.chenup.postgresdb;
+
+import com.ahimsasystems.chenup.core.AbstractPersistenceCapable;
+import com.ahimsasystems.chenup.core.PersistenceCapable;
+import com.ahimsasystems.chenup.core.SecondLevelCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// © 2025 Stephen W. Strom
+// Licensed under the MIT License. See LICENSE file in the project root for details.
+
+/**
+ * ReadCoalescer with several threads reading through a fake mapper, which records the ids of each readAll() instead of querying a database.
+ * The coalescer only hands the context on to the mapper, so the reads are given none.
+ */
+class ReadCoalescerTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final FakeMapper mapper = new FakeMapper();
+
+    @AfterEach
+    void stopThreads() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    void concurrentReadsOfOneTypeAreReadTogether() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(Duration.ofMillis(500), 100);
+        List<UUID> ids = List.of(mapper.add("a"), mapper.add("b"), mapper.add("c"), mapper.add("d"));
+
+        // Each id is read by two threads, which share its place in the batch.
+        List<UUID> reads = new ArrayList<>(ids);
+        reads.addAll(ids);
+        List<SecondLevelCache.Snapshot> snapshots = readConcurrently(coalescer, reads);
+
+        assertEquals(List.of(Set.copyOf(ids)), mapper.readAllCalls);
+        for (int i = 0; i < reads.size(); i++) {
+            assertEquals(reads.get(i), snapshots.get(i).getId());
+            assertEquals(mapper.rows.get(reads.get(i)).name, snapshots.get(i).get(0));
+        }
+        assertEquals(1, coalescer.getBatches());
+        assertEquals(ids.size(), coalescer.getCoalescedReads());
+    }
+
+    @Test
+    void fullBatchIsReadBeforeTheWindowEnds() throws Exception {
+        // The window is far longer than the test may take, so only the batch filling up can release it.
+        ReadCoalescer coalescer = new ReadCoalescer(Duration.ofMinutes(10), 4);
+        List<UUID> ids = List.of(mapper.add("a"), mapper.add("b"), mapper.add("c"), mapper.add("d"));
+
+        long start = System.nanoTime();
+        List<SecondLevelCache.Snapshot> snapshots = readConcurrently(coalescer, ids);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+        assertEquals(List.of(Set.copyOf(ids)), mapper.readAllCalls);
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), snapshots.get(i).getId());
+        }
+    }
+
+    @Test
+    void missingIdCompletesWithNull() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(Duration.ofMillis(500), 100);
+        UUID present = mapper.add("a");
+        UUID missing = UUID.randomUUID();
+
+        List<SecondLevelCache.Snapshot> snapshots = readConcurrently(coalescer, List.of(present, missing));
+
+        assertEquals(List.of(Set.of(present, missing)), mapper.readAllCalls);
+        assertEquals(present, snapshots.get(0).getId());
+        assertNull(snapshots.get(1));
+    }
+
+    // Reads each id on a thread of its own, all started together, and returns the snapshots in the order of the ids.
+    private List<SecondLevelCache.Snapshot> readConcurrently(ReadCoalescer coalescer, List<UUID> ids) throws Exception {
+        CountDownLatch ready = new CountDownLatch(ids.size());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<SecondLevelCache.Snapshot>> futures = new ArrayList<>();
+        for (UUID id : ids) {
+            futures.add(threads.submit(() -> {
+                ready.countDown();
+                go.await();
+                return coalescer.read(id, Row.class, mapper, null);
+            }));
+        }
+        ready.await();
+        go.countDown();
+
+        List<SecondLevelCache.Snapshot> snapshots = new ArrayList<>();
+        for (Future<SecondLevelCache.Snapshot> future : futures) {
+            snapshots.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return snapshots;
+    }
+
+    private static final class Row extends AbstractPersistenceCapable {
+        final String name;
+
+        Row(UUID id, String name) {
+            setId(id);
+            this.name = name;
+        }
+    }
+
+    // Stands in for a generated mapper: readAll() answers from a map and records the ids it was asked for.
+    private static final class FakeMapper extends PostgresAbstractMapper {
+        final Map<UUID, Row> rows = new HashMap<>();
+        final List<Set<UUID>> readAllCalls = new CopyOnWriteArrayList<>();
+
+        UUID add(String name) {
+            UUID id = UUID.randomUUID();
+            rows.put(id, new Row(id, name));
+            return id;
+        }
+
+        @Override
+        public List<PersistenceCapable> readAll(Collection<UUID> ids, PostgresContext context) {
+            readAllCalls.add(Set.copyOf(ids));
+            List<PersistenceCapable> found = new ArrayList<>();
+            for (UUID id : ids) {
+                if (rows.containsKey(id)) {
+                    found.add(new Row(id, rows.get(id).name));
+                }
+            }
+            return found;
+        }
+
+        @Override
+        protected Object[] snapshotValues(PersistenceCapable object) {
+            return new Object[]{((Row) object).name};
+        }
+
+        @Override
+        protected String upsertSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String tableName() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected List<String> columnNames() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void setColumns(PreparedStatement stmt, int index, PersistenceCapable object, long fields, PostgresContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String getSelectSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String getReadSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String getReadAllSql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String copySql() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void writeCopyRow(PgCopyBinaryWriter writer, PersistenceCapable object, PgTypes types) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Object getRecord(ResultSet rs, PostgresContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected AbstractPersistenceCapable materializeFields(SecondLevelCache.Snapshot snapshot, PostgresContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}